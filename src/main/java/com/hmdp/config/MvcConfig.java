@@ -1,13 +1,19 @@
 package com.hmdp.config;
 
+import com.hmdp.utils.AdminInterceptor;
 import com.hmdp.utils.LoginInterceptor;
 import com.hmdp.utils.RefreshTokenInterceptor;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
 
 import javax.annotation.Resource;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
 
 @Configuration
 public class MvcConfig implements WebMvcConfigurer {
@@ -15,6 +21,12 @@ public class MvcConfig implements WebMvcConfigurer {
     @Resource
     StringRedisTemplate stringRedisTemplate;
 
+    /**
+     * 可以访问管理接口的用户 id
+     */
+    @Value("${hmdp.admin.user-ids:}")
+    private Long[] adminUserIds;
+
     @Override
     public void addInterceptors(InterceptorRegistry registry) {
 
@@ -22,7 +34,9 @@ public class MvcConfig implements WebMvcConfigurer {
         registry.addInterceptor(new LoginInterceptor())
                 .excludePathPatterns( //有些资源是不需要拦截的
                         "/shop/**",
-                        "/voucher/**",
+                        "/voucher",
+                        "/voucher/seckill",
+                        "/voucher/list/**",
                         "/shop-type/**",
                         "/upload/**",
                         "/blog/hot",
@@ -30,7 +44,19 @@ public class MvcConfig implements WebMvcConfigurer {
                         "/user/login"
                 ).order(1);
 
+        // 管理接口拦截器：补货会清除所有实例的售罄标记、刷新商户类型会通知所有实例，只允许管理员调用
+        Set<Long> admins = new HashSet<>(Arrays.asList(adminUserIds));
+        registry.addInterceptor(new AdminInterceptor(admins))
+                .addPathPatterns("/voucher/seckill/*/stock", "/shop-type/refresh")
+                .order(2);
+        // 删除店铺只允许管理员调用，查询店铺不需要登录
+        registry.addInterceptor(new AdminInterceptor(admins, Collections.singleton("DELETE")))
+                .addPathPatterns("/shop/*")
+                .order(2);
+
         //Token 刷新拦截器
-        registry.addInterceptor(new RefreshTokenInterceptor(stringRedisTemplate)).addPathPatterns("/**").order(0);
+        registry.addInterceptor(new RefreshTokenInterceptor(stringRedisTemplate)).addPathPatterns("/**")
+                .excludePathPatterns("/shop-type/list") //首页每次都会请求，不访问 Redis
+                .order(0);
     }
 }
\ No newline at end of file
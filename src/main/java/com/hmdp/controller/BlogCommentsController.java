@@ -1,9 +1,12 @@
 package com.hmdp.controller;
 
 
-import org.springframework.web.bind.annotation.RequestMapping;
+import com.hmdp.dto.Result;
+import com.hmdp.entity.BlogComments;
+import com.hmdp.service.IBlogCommentsService;
+import org.springframework.web.bind.annotation.*;
 
-import org.springframework.web.bind.annotation.RestController;
+import javax.annotation.Resource;
 
 /**
  * <p>
@@ -17,4 +20,22 @@ import org.springframework.web.bind.annotation.RestController;
 @RequestMapping("/blog-comments")
 public class BlogCommentsController {
 
+    @Resource
+    private IBlogCommentsService blogCommentsService;
+
+    @PostMapping
+    public Result saveComment(@RequestBody BlogComments comment) {
+        return blogCommentsService.saveComment(comment);
+    }
+
+    @GetMapping("/of/blog")
+    public Result queryComments(@RequestParam("blogId") Long blogId,
+                                @RequestParam(value = "cursor", defaultValue = "") String cursor) {
+        return blogCommentsService.queryComments(blogId, cursor);
+    }
+
+    @DeleteMapping("/{id}")
+    public Result deleteComment(@PathVariable("id") Long id) {
+        return blogCommentsService.deleteComment(id);
+    }
 }
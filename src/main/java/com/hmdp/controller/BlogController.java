@@ -8,6 +8,7 @@ import com.hmdp.entity.Blog;
 import com.hmdp.entity.User;
 import com.hmdp.service.IBlogService;
 import com.hmdp.service.IUserService;
+import com.hmdp.utils.FeedPublisher;
 import com.hmdp.utils.SystemConstants;
 import com.hmdp.utils.UserHolder;
 import org.springframework.web.bind.annotation.*;
@@ -29,6 +30,8 @@ public class BlogController {
 
     @Resource
     private IBlogService blogService;
+    @Resource
+    private FeedPublisher feedPublisher;
 
 
     @GetMapping("/{id}")
@@ -40,10 +43,8 @@ public class BlogController {
         // 获取登录用户
         UserDTO user = UserHolder.getUser();
         blog.setUserId(user.getId());
-        // 保存探店博文
-        blogService.save(blog);
-        // 返回id
-        return Result.ok(blog.getId());
+        // 保存探店博文，返回id
+        return blogService.saveBlog(blog);
     }
 
     @PutMapping("/like/{id}") //同一个用户只能点赞一次
@@ -51,10 +52,21 @@ public class BlogController {
         return blogService.likeBolg(id);
     }
 
+    @GetMapping("/likes/{id}")
+    public Result queryBlogLikes(@PathVariable("id") Long id,
+                                 @RequestParam(value = "limit", defaultValue = "5") Integer limit) {
+        return blogService.queryBlogLikes(id, limit);
+    }
+
     @GetMapping("/of/me")
-    public Result queryMyBlog(@RequestParam(value = "current", defaultValue = "1") Integer current) {
+    public Result queryMyBlog(@RequestParam(value = "current", defaultValue = "1") Integer current,
+                              @RequestParam(value = "cursor", required = false) String cursor) {
         // 获取登录用户
         UserDTO user = UserHolder.getUser();
+        // 传入游标时使用游标分页
+        if (cursor != null) {
+            return blogService.scrollBlogOfUser(user.getId(), cursor);
+        }
         // 根据用户查询
         Page<Blog> page = blogService.query()
                 .eq("user_id", user.getId()).page(new Page<>(current, SystemConstants.MAX_PAGE_SIZE));
@@ -64,13 +76,36 @@ public class BlogController {
     }
 
     @GetMapping("/hot")
-    public Result queryHotBlog(@RequestParam(value = "current", defaultValue = "1") Integer current) {
+    public Result queryHotBlog(@RequestParam(value = "current", defaultValue = "1") Integer current,
+                               @RequestParam(value = "cursor", required = false) String cursor) {
+        if (cursor != null) {
+            return blogService.scrollHotBlog(cursor);
+        }
        return blogService.queryHotBlog(current);
     }
+    @GetMapping("/of/follow")
+    public Result queryBlogOfFollow(
+            @RequestParam("lastId") Long max,
+            @RequestParam(value = "offset", defaultValue = "0") Integer offset) {
+        return blogService.queryBlogOfFollow(max, offset);
+    }
+
+    /**
+     * 查询关注 feed 推送、拉取的笔记数，以及推送队列满时退回拉模式的次数
+     */
+    @GetMapping("/of/follow/stats")
+    public Result queryFeedStats() {
+        return Result.ok(feedPublisher.getStats());
+    }
+
     @GetMapping("/of/user")
     public Result queryBlogByUserId(
             @RequestParam(value = "current", defaultValue = "1") Integer current,
-            @RequestParam("id") Long id) {
+            @RequestParam("id") Long id,
+            @RequestParam(value = "cursor", required = false) String cursor) {
+        if (cursor != null) {
+            return blogService.scrollBlogOfUser(id, cursor);
+        }
         // 根据用户查询
         Page<Blog> page = blogService.query()
                 .eq("user_id", id).page(new Page<>(current, SystemConstants.MAX_PAGE_SIZE));
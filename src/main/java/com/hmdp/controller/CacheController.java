@@ -0,0 +1,68 @@
+package com.hmdp.controller;
+
+
+import com.hmdp.dto.Result;
+import com.hmdp.utils.CacheClient;
+import com.hmdp.utils.ShopBloomFilter;
+import com.hmdp.utils.ShopCacheWarmer;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import javax.annotation.Resource;
+
+/**
+ * <p>
+ * 缓存监控
+ * </p>
+ */
+@RestController
+@RequestMapping("/cache")
+public class CacheController {
+
+    @Resource
+    private CacheClient cacheClient;
+
+    @Resource
+    private ShopBloomFilter shopBloomFilter;
+
+    @Resource
+    private ShopCacheWarmer shopCacheWarmer;
+
+    /**
+     * 查询各类缓存的命中率
+     * @return keyPrefix -> 命中、未命中、命中率、平均重建耗时
+     */
+    @GetMapping("/stats")
+    public Result queryCacheStats() {
+        return Result.ok(cacheClient.getStats());
+    }
+
+    /**
+     * 查询店铺布隆过滤器的容量、误判率和拦截次数
+     */
+    @GetMapping("/bloom/shop")
+    public Result queryShopBloomStats() {
+        return Result.ok(shopBloomFilter.getStats());
+    }
+
+    /**
+     * 手动触发店铺缓存预热，例如在活动开始前
+     */
+    @PostMapping("/warm-up/shop")
+    public Result warmUpShop() {
+        if (shopCacheWarmer.warmUpAsync("manual") == null) {
+            return Result.fail("预热任务正在运行");
+        }
+        return Result.ok();
+    }
+
+    /**
+     * 查询最近一次店铺缓存预热的进度
+     */
+    @GetMapping("/warm-up/shop")
+    public Result queryWarmUpProgress() {
+        return Result.ok(shopCacheWarmer.getProgress());
+    }
+}
@@ -1,15 +1,20 @@
 package com.hmdp.controller;
 
 
+import com.hmdp.dto.ResponseSnapshot;
 import com.hmdp.dto.Result;
-import com.hmdp.entity.ShopType;
 import com.hmdp.service.IShopTypeService;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
 import javax.annotation.Resource;
-import java.util.List;
 
 /**
  * <p>
@@ -25,11 +30,55 @@ public class ShopTypeController {
     @Resource
     private IShopTypeService typeService;
 
+    /**
+     * 查询商户类型列表，直接返回内存中序列化好的快照；
+     * 浏览器带上的 If-None-Match 中包含当前版本时返回 304
+     */
     @GetMapping("list")
-    public Result queryTypeList() {
+    public ResponseEntity<byte[]> queryTypeList(
+            @RequestHeader(value = "If-None-Match", required = false) String ifNoneMatch) {
 //        List<ShopType> typeList = typeService
 //                .query().orderByAsc("sort").list();
 //        return Result.ok(typeList);
-        return typeService.queryTypeList();
+        ResponseSnapshot snapshot = typeService.queryTypeListSnapshot();
+        if (matches(ifNoneMatch, snapshot.getEtag())) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                    .eTag(snapshot.getEtag())
+                    .cacheControl(CacheControl.noCache())
+                    .build();
+        }
+        return ResponseEntity.ok()
+                .eTag(snapshot.getEtag())
+                .cacheControl(CacheControl.noCache())
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(snapshot.getBody());
+    }
+
+    /**
+     * If-None-Match 可能是 *，或者逗号分隔的多个 etag，使用弱比较：忽略 W/ 前缀
+     */
+    static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String tag : ifNoneMatch.split(",")) {
+            tag = tag.trim();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals("*") || tag.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 修改商户类型后刷新所有实例的快照，只允许管理员调用
+     */
+    @PostMapping("refresh")
+    public Result refreshTypeList() {
+        typeService.refreshTypeList();
+        return Result.ok();
     }
 }
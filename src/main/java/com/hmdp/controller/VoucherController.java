@@ -45,6 +45,17 @@ public class VoucherController {
         return Result.ok(voucher.getId());
     }
 
+    /**
+     * 秒杀券补货
+     * @param voucherId 优惠券id
+     * @param stock 补货数量
+     * @return 无
+     */
+    @PutMapping("seckill/{id}/stock")
+    public Result addSeckillStock(@PathVariable("id") Long voucherId, @RequestParam("stock") Integer stock) {
+        return voucherService.addSeckillStock(voucherId, stock);
+    }
+
     /**
      * 查询店铺的优惠券列表
      * @param shopId 店铺id
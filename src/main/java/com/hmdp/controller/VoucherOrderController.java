@@ -5,6 +5,7 @@ import com.hmdp.dto.Result;
 import com.hmdp.service.ISeckillVoucherService;
 import com.hmdp.service.IVoucherOrderService;
 import com.hmdp.service.impl.VoucherServiceImpl;
+import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
@@ -36,4 +37,13 @@ public class VoucherOrderController {
     public Result seckillVoucher(@PathVariable("id") Long voucherId) {
         return iVoucherOrderService.secKillVoucher(voucherId);
     }
+
+    /**
+     * 查询订单 stream 各分区的积压情况
+     * @return 每个分区的长度、pending 数和未投递的消息数
+     */
+    @GetMapping("stream/lag")
+    public Result queryOrderStreamLag() {
+        return iVoucherOrderService.queryOrderStreamLag();
+    }
 }
@@ -0,0 +1,14 @@
+package com.hmdp.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * 预先序列化好的响应，etag 和 body 放在一个对象里，保证两者一致
+ */
+@Data
+@AllArgsConstructor
+public class ResponseSnapshot {
+    private String etag;
+    private byte[] body;
+}
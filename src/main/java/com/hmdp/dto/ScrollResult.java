@@ -9,4 +9,8 @@ public class ScrollResult {
     private List<?> list;
     private Long minTime;
     private Integer offset;
+    /**
+     * 游标分页的下一页游标，为空表示没有更多数据
+     */
+    private String cursor;
 }
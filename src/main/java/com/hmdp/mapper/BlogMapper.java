@@ -2,6 +2,9 @@ package com.hmdp.mapper;
 
 import com.hmdp.entity.Blog;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.Map;
 
 /**
  * <p>
@@ -13,4 +16,10 @@ import com.baomidou.mybatisplus.core.mapper.BaseMapper;
  */
 public interface BlogMapper extends BaseMapper<Blog> {
 
+    /**
+     * 一条 UPDATE 批量累加计数列
+     * @param column 计数列，liked 或 comments，只能传入常量
+     * @param deltas 笔记id -> 增量
+     */
+    int incrCounter(@Param("column") String column, @Param("deltas") Map<Long, Long> deltas);
 }
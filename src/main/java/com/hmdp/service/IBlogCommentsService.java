@@ -1,5 +1,6 @@
 package com.hmdp.service;
 
+import com.hmdp.dto.Result;
 import com.hmdp.entity.BlogComments;
 import com.baomidou.mybatisplus.extension.service.IService;
 
@@ -13,4 +14,19 @@ import com.baomidou.mybatisplus.extension.service.IService;
  */
 public interface IBlogCommentsService extends IService<BlogComments> {
 
+    /**
+     * 发表评论，评论数先记录在 Redis，定时刷写到 tb_blog
+     */
+    Result saveComment(BlogComments comment);
+
+    /**
+     * 游标分页查询笔记的评论，按 id 倒序（新的在前），第一页从缓存读取
+     * @param cursor 上一页返回的游标，第一页传空字符串
+     */
+    Result queryComments(Long blogId, String cursor);
+
+    /**
+     * 删除自己的评论
+     */
+    Result deleteComment(Long id);
 }
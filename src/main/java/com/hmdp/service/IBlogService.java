@@ -16,7 +16,40 @@ public interface IBlogService extends IService<Blog> {
 
     Result queryBlogById(Long id);
 
+    /**
+     * 发布笔记，并加入热门排行
+     */
+    Result saveBlog(Blog blog);
+
+    /**
+     * 滚动分页查询关注的人发布的笔记
+     * @param max 上一页返回的 minTime，第一页传当前时间戳
+     * @param offset 上一页返回的 offset，第一页传0
+     */
+    Result queryBlogOfFollow(Long max, Integer offset);
+
+    /**
+     * 按热门排行分页查询笔记，排行还没有构建完成时按点赞数查询数据库
+     */
     Result queryHotBlog(Integer current);
 
     Result likeBolg(Long id);
+
+    /**
+     * 查询最早点赞的用户，按点赞时间升序
+     * @param limit 返回的用户数，不超过 hmdp.blog.liked.max-likers
+     */
+    Result queryBlogLikes(Long id, Integer limit);
+
+    /**
+     * 按热门排行的热度游标分页查询热门笔记
+     * @param cursor 上一页返回的游标，第一页传空字符串
+     */
+    Result scrollHotBlog(String cursor);
+
+    /**
+     * 游标分页查询用户的笔记，按 id 倒序（新的在前）
+     * @param cursor 上一页返回的游标，第一页传空字符串
+     */
+    Result scrollBlogOfUser(Long userId, String cursor);
 }
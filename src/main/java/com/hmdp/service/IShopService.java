@@ -4,6 +4,9 @@ import com.hmdp.dto.Result;
 import com.hmdp.entity.Shop;
 import com.baomidou.mybatisplus.extension.service.IService;
 
+import java.util.Collection;
+import java.util.List;
+
 /**
  * <p>
  *  服务类
@@ -17,4 +20,38 @@ public interface IShopService extends IService<Shop> {
     Result queryById(Long id);
 
     Result update(Shop shop);
+
+    Result saveShop(Shop shop);
+
+    /**
+     * 删除店铺，同时从缓存、GEO 索引和名称索引中删除
+     */
+    Result deleteShop(Long id);
+
+    /**
+     * 批量查询店铺，按 ids 的顺序返回，不存在的店铺会被忽略
+     */
+    List<Shop> queryByIds(Collection<Long> ids);
+
+    /**
+     * 按类型分页查询店铺，传入坐标时按距离由近到远排序
+     */
+    Result queryShopByType(Integer typeId, Integer current, Double x, Double y);
+
+    /**
+     * 根据名称关键字分页查询店铺
+     */
+    Result queryShopByName(String name, Integer current);
+
+    /**
+     * 按类型游标分页查询店铺，按 id 升序
+     * @param cursor 上一页返回的游标，第一页传空字符串
+     */
+    Result scrollShopByType(Integer typeId, String cursor);
+
+    /**
+     * 根据名称关键字游标分页查询店铺，按 id 升序
+     * @param cursor 上一页返回的游标，第一页传空字符串
+     */
+    Result scrollShopByName(String name, String cursor);
 }
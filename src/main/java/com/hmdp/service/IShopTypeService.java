@@ -1,5 +1,6 @@
 package com.hmdp.service;
 
+import com.hmdp.dto.ResponseSnapshot;
 import com.hmdp.dto.Result;
 import com.hmdp.entity.ShopType;
 import com.baomidou.mybatisplus.extension.service.IService;
@@ -17,4 +18,14 @@ import java.awt.geom.RectangularShape;
 public interface IShopTypeService extends IService<ShopType> {
 
     Result queryTypeList();
+
+    /**
+     * 序列化好的商户类型列表响应，带 ETag
+     */
+    ResponseSnapshot queryTypeListSnapshot();
+
+    /**
+     * 修改商户类型后调用，通知所有实例重新加载
+     */
+    void refreshTypeList();
 }
@@ -3,9 +3,12 @@ package com.hmdp.service;
 import com.baomidou.mybatisplus.extension.service.IService;
 import com.hmdp.dto.LoginFormDTO;
 import com.hmdp.dto.Result;
+import com.hmdp.dto.UserDTO;
 import com.hmdp.entity.User;
 
 import javax.servlet.http.HttpSession;
+import java.util.Collection;
+import java.util.Map;
 
 /**
  * <p>
@@ -20,4 +23,12 @@ public interface IUserService extends IService<User> {
     Result sendCode(String phone, HttpSession session);
 
     Result login(LoginFormDTO loginForm, HttpSession session);
+
+    Result queryUserById(Long userId);
+
+    /**
+     * 批量查询用户对外展示的信息，和 queryUserById 共用缓存
+     * @return 用户id -> UserDTO，不存在的用户不放入结果
+     */
+    Map<Long, UserDTO> queryUserDTOs(Collection<Long> ids);
 }
@@ -4,6 +4,8 @@ import com.hmdp.dto.Result;
 import com.hmdp.entity.VoucherOrder;
 import com.baomidou.mybatisplus.extension.service.IService;
 
+import java.util.List;
+
 /**
  * <p>
  *  服务类
@@ -18,4 +20,14 @@ public interface IVoucherOrderService extends IService<VoucherOrder> {
 
     Result createVoucherOrder(Long voucherId);
     void createVoucherOrder(VoucherOrder voucherOrder);
+
+    /**
+     * 批量创建订单：批内去重、按优惠券聚合扣减库存、批量插入，任意一步失败整批回滚
+     */
+    void createVoucherOrderBatch(List<VoucherOrder> voucherOrders);
+
+    /**
+     * 查询各订单分区的长度、pending 数和未投递的消息数
+     */
+    Result queryOrderStreamLag();
 }
@@ -1,11 +1,43 @@
 package com.hmdp.service.impl;
 
+import cn.hutool.core.util.StrUtil;
+import cn.hutool.json.JSONUtil;
+import com.hmdp.dto.Result;
+import com.hmdp.dto.ScrollResult;
+import com.hmdp.dto.UserDTO;
+import com.hmdp.entity.Blog;
 import com.hmdp.entity.BlogComments;
 import com.hmdp.mapper.BlogCommentsMapper;
 import com.hmdp.service.IBlogCommentsService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.hmdp.service.IBlogService;
+import com.hmdp.service.IUserService;
+import com.hmdp.utils.BlogCounterFlusher;
+import com.hmdp.utils.BlogHotRanking;
+import com.hmdp.utils.ScrollCursor;
+import com.hmdp.utils.SystemConstants;
+import com.hmdp.utils.UserHolder;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.Resource;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static com.hmdp.utils.RedisConstants.CACHE_COMMENTS_KEY;
+import static com.hmdp.utils.RedisConstants.CACHE_COMMENTS_TTL;
+import static com.hmdp.utils.RedisConstants.CACHE_COMMENTS_VERSION_KEY;
+
 /**
  * <p>
  *  服务实现类
@@ -17,4 +49,172 @@ import org.springframework.stereotype.Service;
 @Service
 public class BlogCommentsServiceImpl extends ServiceImpl<BlogCommentsMapper, BlogComments> implements IBlogCommentsService {
 
+    private static final int MAX_CONTENT_LENGTH = 255;
+
+    private static final DefaultRedisScript<Long> ADD_SCRIPT;
+    private static final DefaultRedisScript<Long> DELETE_SCRIPT;
+    private static final DefaultRedisScript<Long> CACHE_INIT_SCRIPT;
+
+    static {
+        ADD_SCRIPT = new DefaultRedisScript<>();
+        ADD_SCRIPT.setLocation(new ClassPathResource("comment_add.lua"));
+        ADD_SCRIPT.setResultType(Long.class);
+
+        DELETE_SCRIPT = new DefaultRedisScript<>();
+        DELETE_SCRIPT.setLocation(new ClassPathResource("comment_delete.lua"));
+        DELETE_SCRIPT.setResultType(Long.class);
+
+        CACHE_INIT_SCRIPT = new DefaultRedisScript<>();
+        CACHE_INIT_SCRIPT.setLocation(new ClassPathResource("comment_cache_init.lua"));
+        CACHE_INIT_SCRIPT.setResultType(Long.class);
+    }
+
+    @Resource
+    private IBlogService blogService;
+    @Resource
+    private IUserService userService;
+    @Resource
+    private StringRedisTemplate stringRedisTemplate;
+    @Resource
+    private BlogHotRanking blogHotRanking;
+
+    @Override
+    public Result saveComment(BlogComments comment) {
+        // 1.校验
+        if (StrUtil.isBlank(comment.getContent())) {
+            return Result.fail("评论内容不能为空！");
+        }
+        if (comment.getContent().length() > MAX_CONTENT_LENGTH) {
+            return Result.fail("评论内容过长！");
+        }
+        Blog blog = blogService.getById(comment.getBlogId());
+        if (blog == null) {
+            return Result.fail("笔记不存在！");
+        }
+        // 2.保存评论，创建时间在这里生成，缓存的评论和数据库一致
+        LocalDateTime now = LocalDateTime.now();
+        comment.setId(null)
+                .setUserId(UserHolder.getUser().getId())
+                .setParentId(comment.getParentId() == null ? 0L : comment.getParentId())
+                .setAnswerId(comment.getAnswerId() == null ? 0L : comment.getAnswerId())
+                .setLiked(0)
+                .setStatus(false)
+                .setCreateTime(now)
+                .setUpdateTime(now);
+        save(comment);
+        // 3.执行 lua 脚本，更新缓存的第一页评论和版本号，并记录评论数增量，增量由 BlogCounterFlusher 定时刷写到数据库
+        stringRedisTemplate.execute(
+                ADD_SCRIPT,
+                Arrays.asList(CACHE_COMMENTS_KEY + comment.getBlogId(), CACHE_COMMENTS_VERSION_KEY + comment.getBlogId(),
+                        BlogCounterFlusher.deltaKey(BlogCounterFlusher.COMMENTS)),
+                JSONUtil.toJsonStr(comment), comment.getBlogId().toString(),
+                String.valueOf(SystemConstants.MAX_PAGE_SIZE), comment.getId().toString(), versionTtlSeconds());
+        // 4.更新热度
+        blogHotRanking.onComment(comment.getBlogId(), true, now.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
+        return Result.ok(comment.getId());
+    }
+
+    @Override
+    public Result queryComments(Long blogId, String cursor) {
+        ScrollCursor last = ScrollCursor.decode(cursor);
+        // 1.第一页从缓存读取，之后按 id 倒序向后查询一页
+        List<BlogComments> comments = last == null
+                ? queryFirstPage(blogId)
+                : query()
+                .eq("blog_id", blogId)
+                .eq("status", 0)
+                .lt("id", last.getId())
+                .orderByDesc("id")
+                .last("limit " + SystemConstants.MAX_PAGE_SIZE)
+                .list();
+        // 2.查询评论的用户
+        Set<Long> userIds = comments.stream().map(BlogComments::getUserId).collect(Collectors.toSet());
+        Map<Long, UserDTO> users = userIds.isEmpty() ? Collections.emptyMap() : userService.queryUserDTOs(userIds);
+        for (BlogComments comment : comments) {
+            UserDTO user = users.get(comment.getUserId());
+            if (user != null) {
+                comment.setName(user.getNickName());
+                comment.setIcon(user.getIcon());
+            }
+        }
+        // 3.封装并返回
+        ScrollResult r = new ScrollResult();
+        r.setList(comments);
+        if (comments.size() == SystemConstants.MAX_PAGE_SIZE) {
+            Long lastId = comments.get(comments.size() - 1).getId();
+            r.setCursor(new ScrollCursor(lastId, lastId).encode());
+        }
+        return Result.ok(r);
+    }
+
+    /**
+     * 第一页评论缓存在 LIST 中，发表评论时 LPUSH + LTRIM 保持最新，删除评论时删除缓存。
+     * 发表、删除评论都会递增笔记的评论版本号，加载缓存时先读版本号再查询数据库，
+     * 写入缓存时版本号已经变化说明查到的数据可能已经过时（例如包含刚删除的评论），不写入。
+     * 缓存有过期时间，只有最近被查看的笔记会保留缓存
+     */
+    List<BlogComments> queryFirstPage(Long blogId) {
+        String key = CACHE_COMMENTS_KEY + blogId;
+        // 1.查询缓存
+        List<String> cached = stringRedisTemplate.opsForList().range(key, 0, SystemConstants.MAX_PAGE_SIZE - 1);
+        if (cached != null && !cached.isEmpty()) {
+            return cached.stream()
+                    .map(json -> JSONUtil.toBean(json, BlogComments.class))
+                    .collect(Collectors.toList());
+        }
+        // 2.未命中，先读版本号，再查询数据库
+        String version = stringRedisTemplate.opsForValue().get(CACHE_COMMENTS_VERSION_KEY + blogId);
+        List<BlogComments> comments = query()
+                .eq("blog_id", blogId)
+                .eq("status", 0)
+                .orderByDesc("id")
+                .last("limit " + SystemConstants.MAX_PAGE_SIZE)
+                .list();
+        if (comments.isEmpty()) {
+            // 空列表无法保存在 LIST 中，有 blog_id 索引，直接查询数据库
+            return comments;
+        }
+        // 3.写入缓存，并发加载时只有一个请求写入，版本号变化时不写入
+        List<String> args = new ArrayList<>(comments.size() + 2);
+        args.add(String.valueOf(TimeUnit.MINUTES.toSeconds(CACHE_COMMENTS_TTL)));
+        args.add(version == null ? "" : version);
+        comments.forEach(comment -> args.add(JSONUtil.toJsonStr(comment)));
+        stringRedisTemplate.execute(CACHE_INIT_SCRIPT,
+                Arrays.asList(key, CACHE_COMMENTS_VERSION_KEY + blogId), args.toArray());
+        return comments;
+    }
+
+    /**
+     * 版本号只需要在加载缓存期间有效，和缓存的过期时间相同即可
+     */
+    private static String versionTtlSeconds() {
+        return String.valueOf(TimeUnit.MINUTES.toSeconds(CACHE_COMMENTS_TTL));
+    }
+
+    @Override
+    public Result deleteComment(Long id) {
+        // 1.查询评论
+        BlogComments comment = getById(id);
+        if (comment == null) {
+            return Result.fail("评论不存在！");
+        }
+        // 2.只能删除自己的评论
+        if (!comment.getUserId().equals(UserHolder.getUser().getId())) {
+            return Result.fail("只能删除自己的评论！");
+        }
+        // 3.删除评论
+        if (!removeById(id)) {
+            return Result.fail("评论不存在！");
+        }
+        // 4.删除缓存的第一页评论，递增版本号，并记录评论数增量
+        stringRedisTemplate.execute(
+                DELETE_SCRIPT,
+                Arrays.asList(CACHE_COMMENTS_KEY + comment.getBlogId(), CACHE_COMMENTS_VERSION_KEY + comment.getBlogId(),
+                        BlogCounterFlusher.deltaKey(BlogCounterFlusher.COMMENTS)),
+                comment.getBlogId().toString(), versionTtlSeconds());
+        // 5.更新热度
+        blogHotRanking.onComment(comment.getBlogId(), false,
+                comment.getCreateTime().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
+        return Result.ok();
+    }
 }
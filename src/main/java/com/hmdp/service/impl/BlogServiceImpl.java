@@ -1,23 +1,55 @@
 package com.hmdp.service.impl;
 
-import cn.hutool.core.util.BooleanUtil;
+import cn.hutool.core.bean.BeanUtil;
 import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.hmdp.dto.Result;
+import com.hmdp.dto.ScrollResult;
+import com.hmdp.dto.UserDTO;
 import com.hmdp.entity.Blog;
 import com.hmdp.entity.User;
 import com.hmdp.mapper.BlogMapper;
 import com.hmdp.service.IBlogService;
 import com.hmdp.service.IUserService;
+import com.hmdp.utils.BlogCounterFlusher;
+import com.hmdp.utils.BlogHotRanking;
+import com.hmdp.utils.BlogLikedMigrator;
+import com.hmdp.utils.CacheClient;
+import com.hmdp.utils.CacheStrategy;
+import com.hmdp.utils.FeedMerger;
+import com.hmdp.utils.FeedPublisher;
+import com.hmdp.utils.ScrollCursor;
 import com.hmdp.utils.SystemConstants;
 import com.hmdp.utils.UserHolder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.RedisCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
 import org.springframework.stereotype.Service;
 
 import javax.annotation.Resource;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 import static com.hmdp.utils.RedisConstants.BLOG_LIKED_KEY;
+import static com.hmdp.utils.RedisConstants.CACHE_BLOG_KEY;
+import static com.hmdp.utils.RedisConstants.CACHE_BLOG_TTL;
+import static com.hmdp.utils.RedisConstants.FEED_CELEBRITY_KEY;
+import static com.hmdp.utils.RedisConstants.FEED_KEY;
+import static com.hmdp.utils.RedisConstants.FEED_OUTBOX_KEY;
+import static com.hmdp.utils.RedisConstants.FOLLOWS_KEY;
 
 /**
  * <p>
@@ -29,10 +61,101 @@ import static com.hmdp.utils.RedisConstants.BLOG_LIKED_KEY;
  */
 @Service
 public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IBlogService {
+
+    private static final DefaultRedisScript<List> LIKE_SCRIPT;
+
+    static {
+        LIKE_SCRIPT = new DefaultRedisScript<>();
+        LIKE_SCRIPT.setLocation(new ClassPathResource("blog_like.lua"));
+        LIKE_SCRIPT.setResultType(List.class);
+    }
+
+    /**
+     * 点赞列表最多返回的用户数
+     */
+    @Value("${hmdp.blog.liked.max-likers:50}")
+    private int maxLikers;
+    /**
+     * 读取关注 feed 时最多归并的大 V 发件箱数
+     */
+    @Value("${hmdp.feed.max-pull-sources:200}")
+    private int maxPullSources;
+
     @Resource
     private IUserService userService;
     @Resource
     private StringRedisTemplate stringRedisTemplate;
+    @Resource
+    private BlogCounterFlusher blogCounterFlusher;
+    @Resource
+    private BlogHotRanking blogHotRanking;
+    @Resource
+    private BlogLikedMigrator blogLikedMigrator;
+    @Resource
+    private CacheClient cacheClient;
+    @Resource
+    private FeedPublisher feedPublisher;
+
+    @Override
+    public Result saveBlog(Blog blog) {
+        // 1.保存探店博文
+        save(blog);
+        // 2.加入热门排行
+        blogHotRanking.onPost(blog.getId());
+        // 3.异步推送给所有粉丝
+        feedPublisher.publishAsync(blog.getUserId(), blog.getId(), System.currentTimeMillis());
+        return Result.ok(blog.getId());
+    }
+
+    @Override
+    public Result queryBlogOfFollow(Long max, Integer offset) {
+        // 1.获取当前用户
+        Long userId = UserHolder.getUser().getId();
+        // 2.来源：自己的收件箱，以及关注的大 V 的发件箱
+        List<String> sources = new ArrayList<>();
+        sources.add(FEED_KEY + userId);
+        Set<String> celebrities = stringRedisTemplate.opsForSet().intersect(FOLLOWS_KEY + userId, FEED_CELEBRITY_KEY);
+        if (celebrities != null) {
+            celebrities.stream().limit(maxPullSources).forEach(id -> sources.add(FEED_OUTBOX_KEY + id));
+        }
+        // 3.一次 pipeline 查询每个来源 ZREVRANGEBYSCORE key max 0 LIMIT 0 offset+count
+        long count = offset + SystemConstants.MAX_PAGE_SIZE;
+        List<Object> results = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (String source : sources) {
+                connection.zRevRangeByScoreWithScores(source.getBytes(StandardCharsets.UTF_8), 0, max, 0, count);
+            }
+            return null;
+        });
+        // 4.k 路归并，解析出这一页的笔记id、最小时间戳和 offset
+        List<List<FeedMerger.Entry>> entries = new ArrayList<>(results.size());
+        for (Object result : results) {
+            @SuppressWarnings("unchecked")
+            Set<ZSetOperations.TypedTuple<String>> typedTuples = (Set<ZSetOperations.TypedTuple<String>>) result;
+            entries.add(typedTuples.stream()
+                    .map(tuple -> new FeedMerger.Entry(tuple.getValue(), tuple.getScore().longValue()))
+                    .collect(Collectors.toList()));
+        }
+        FeedMerger.Page page = FeedMerger.merge(entries, max, offset, SystemConstants.MAX_PAGE_SIZE);
+        if (page.getIds().isEmpty()) {
+            return Result.ok();
+        }
+        List<Long> ids = page.getIds();
+        // 5.从缓存批量查询笔记，按 feed 的顺序，已删除的笔记跳过
+        Map<Long, Blog> cached = cacheClient.getAll(CACHE_BLOG_KEY, ids, Blog.class,
+                missIds -> listByIds(missIds).stream().collect(Collectors.toMap(Blog::getId, Function.identity())),
+                CACHE_BLOG_TTL, TimeUnit.MINUTES, CacheStrategy.PASS_THROUGH);
+        List<Blog> blogs = cached.values().stream()
+                .map(blog -> BeanUtil.copyProperties(blog, Blog.class))
+                .collect(Collectors.toList());
+        // 6.查询用户、是否被点赞
+        hydrate(blogs);
+        // 7.封装并返回
+        ScrollResult r = new ScrollResult();
+        r.setList(blogs);
+        r.setMinTime(page.getMinTime());
+        r.setOffset(page.getOffset());
+        return Result.ok(r);
+    }
 
     @Override
     public Result queryBlogById(Long id) {
@@ -41,68 +164,204 @@ public class BlogServiceImpl extends ServiceImpl<BlogMapper, Blog> implements IB
         if (blog == null) {
             return Result.fail("笔记不存在！");
         }
-        // 2.查询blog有关的用户
-        queryBlogUser(blog);
-        //3. 查询是否被点赞
-        isBlogLiked(blog);
+        // 2.查询blog有关的用户、是否被点赞
+        hydrate(Collections.singletonList(blog));
         return Result.ok(blog);
     }
 
-    private void isBlogLiked(Blog blog) {
-        Long userId = UserHolder.getUser().getId();
-        String key = BLOG_LIKED_KEY + blog.getId();
-        Boolean isMember = stringRedisTemplate.opsForSet().isMember(key, userId.toString());
-        blog.setIsLike(BooleanUtil.isTrue(isMember));
+    /**
+     * 批量补全笔记的作者信息、当前用户是否点赞、还没有刷写的点赞数和评论数，
+     * 不论多少篇笔记，作者都只需要一次 MGET（未命中时一次 SQL），点赞状态和计数各一次 Redis pipeline
+     */
+    private void hydrate(List<Blog> blogs) {
+        if (blogs.isEmpty()) {
+            return;
+        }
+        // 1.一次查询所有作者，和 /user/{id} 共用 UserDTO 缓存
+        Set<Long> userIds = blogs.stream().map(Blog::getUserId).collect(Collectors.toSet());
+        Map<Long, UserDTO> users = userService.queryUserDTOs(userIds);
+        for (Blog blog : blogs) {
+            UserDTO user = users.get(blog.getUserId());
+            if (user != null) {
+                blog.setName(user.getNickName());
+                blog.setIcon(user.getIcon());
+            }
+        }
+        // 2.查询是否被点赞
+        isBlogLiked(blogs);
+        // 3.加上还没有刷写到数据库的点赞数、评论数
+        mergePendingCounters(blogs);
     }
 
-    private void queryBlogUser(Blog blog) {
-        Long userId = blog.getUserId();
-        User user = userService.getById(userId);
-        blog.setName(user.getNickName());
-        blog.setIcon(user.getIcon());
+    /**
+     * 一次 pipeline 查询当前用户是否点赞了这些笔记，未登录时都是未点赞
+     */
+    private void isBlogLiked(List<Blog> blogs) {
+        UserDTO user = UserHolder.getUser();
+        if (user == null) {
+            blogs.forEach(blog -> blog.setIsLike(false));
+            return;
+        }
+        byte[] member = user.getId().toString().getBytes(StandardCharsets.UTF_8);
+        // 点赞用户 ZSET 的 score 是点赞时间，有 score 就是点赞过
+        List<Object> scores = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (Blog blog : blogs) {
+                connection.zScore((BLOG_LIKED_KEY + blog.getId()).getBytes(StandardCharsets.UTF_8), member);
+            }
+            return null;
+        });
+        for (int i = 0; i < blogs.size(); i++) {
+            blogs.get(i).setIsLike(scores.get(i) != null);
+        }
     }
 
+    /**
+     * 点赞数、评论数先记录在 Redis，定时刷写到数据库，读取时加上还没有刷写的增量
+     */
+    private void mergePendingCounters(List<Blog> blogs) {
+        Map<String, Map<Long, Long>> deltas = blogCounterFlusher.pendingDeltas(
+                blogs.stream().map(Blog::getId).collect(Collectors.toList()));
+        Map<Long, Long> likedDeltas = deltas.get(BlogCounterFlusher.LIKED);
+        Map<Long, Long> commentsDeltas = deltas.get(BlogCounterFlusher.COMMENTS);
+        for (Blog blog : blogs) {
+            Long delta = likedDeltas.get(blog.getId());
+            if (delta != null) {
+                int liked = blog.getLiked() == null ? 0 : blog.getLiked();
+                blog.setLiked((int) Math.max(0, liked + delta));
+            }
+            delta = commentsDeltas.get(blog.getId());
+            if (delta != null) {
+                int comments = blog.getComments() == null ? 0 : blog.getComments();
+                blog.setComments((int) Math.max(0, comments + delta));
+            }
+        }
+    }
 
     @Override
     public Result queryHotBlog(Integer current) {
-        // 根据用户查询
+        if (blogHotRanking.isReady()) {
+            // 1.从热门排行查询这一页的笔记id
+            List<Long> ids = blogHotRanking.range((long) (current - 1) * SystemConstants.MAX_PAGE_SIZE,
+                    SystemConstants.MAX_PAGE_SIZE);
+            // 2.从缓存批量查询笔记，按排行的顺序返回；缓存中的对象可能被本地缓存共享，复制后再补全
+            Map<Long, Blog> cached = cacheClient.getAll(CACHE_BLOG_KEY, ids, Blog.class,
+                    missIds -> listByIds(missIds).stream().collect(Collectors.toMap(Blog::getId, Function.identity())),
+                    CACHE_BLOG_TTL, TimeUnit.MINUTES, CacheStrategy.PASS_THROUGH);
+            List<Blog> records = cached.values().stream()
+                    .map(blog -> BeanUtil.copyProperties(blog, Blog.class))
+                    .collect(Collectors.toList());
+            // 3.查询用户、是否被点赞
+            hydrate(records);
+            return Result.ok(records);
+        }
+        // 排行还没有构建完成，根据点赞数查询
         Page<Blog> page = query()
                 .orderByDesc("liked")
                 .page(new Page<>(current, SystemConstants.MAX_PAGE_SIZE));
         // 获取当前页数据
         List<Blog> records = page.getRecords();
-        // 查询用户
-        records.forEach(blog -> {
-            this.isBlogLiked(blog);
-            this.queryBlogUser(blog);
-        });
+        // 查询用户、是否被点赞
+        hydrate(records);
         return Result.ok(records);
     }
 
+    @Override
+    public Result scrollHotBlog(String cursor) {
+        ScrollCursor last = ScrollCursor.decode(cursor);
+        ScrollResult r = new ScrollResult();
+        if (!blogHotRanking.isReady()) {
+            // 排行还没有构建完成，只返回按点赞数排序的第一页，没有下一页游标
+            List<Blog> records = query()
+                    .orderByDesc("liked", "id")
+                    .last("limit " + SystemConstants.MAX_PAGE_SIZE)
+                    .list();
+            hydrate(records);
+            r.setList(records);
+            return Result.ok(r);
+        }
+        // 1.按 (热度, id) 从热门排行向后查询一页笔记id
+        BlogHotRanking.Page page = blogHotRanking.scroll(last, SystemConstants.MAX_PAGE_SIZE);
+        // 2.从缓存批量查询笔记，按排行的顺序返回；缓存中的对象可能被本地缓存共享，复制后再补全
+        Map<Long, Blog> cached = cacheClient.getAll(CACHE_BLOG_KEY, page.getIds(), Blog.class,
+                missIds -> listByIds(missIds).stream().collect(Collectors.toMap(Blog::getId, Function.identity())),
+                CACHE_BLOG_TTL, TimeUnit.MINUTES, CacheStrategy.PASS_THROUGH);
+        List<Blog> records = cached.values().stream()
+                .map(blog -> BeanUtil.copyProperties(blog, Blog.class))
+                .collect(Collectors.toList());
+        // 3.查询用户、是否被点赞
+        hydrate(records);
+        r.setList(records);
+        r.setCursor(page.getCursor());
+        return Result.ok(r);
+    }
+
+    @Override
+    public Result scrollBlogOfUser(Long userId, String cursor) {
+        ScrollCursor last = ScrollCursor.decode(cursor);
+        // 按 id 倒序向后查询一页
+        List<Blog> records = query()
+                .eq("user_id", userId)
+                .lt(last != null, "id", last == null ? null : last.getId())
+                .orderByDesc("id")
+                .last("limit " + SystemConstants.MAX_PAGE_SIZE)
+                .list();
+        ScrollResult r = new ScrollResult();
+        r.setList(records);
+        if (records.size() == SystemConstants.MAX_PAGE_SIZE) {
+            Long lastId = records.get(records.size() - 1).getId();
+            r.setCursor(new ScrollCursor(lastId, lastId).encode());
+        }
+        return Result.ok(r);
+    }
+
     @Override
     public Result likeBolg(Long id) {
-        // 1.获取登录用户
+        // 1.判断笔记是否存在，不存在的 id 不能写入点赞集合和计数增量
+        Blog blog = cacheClient.get(CACHE_BLOG_KEY, id, Blog.class, this::getById,
+                CACHE_BLOG_TTL, TimeUnit.MINUTES, CacheStrategy.PASS_THROUGH);
+        if (blog == null) {
+            return Result.fail("笔记不存在！");
+        }
+        // 2.获取登录用户
         Long userId = UserHolder.getUser().getId();
-        // 2.判断当前登录用户是否已经点赞
-        String key = BLOG_LIKED_KEY + id;
-        Boolean isMember = stringRedisTemplate.opsForSet().isMember(key, userId.toString());
-        if (BooleanUtil.isFalse(isMember)) {
-            //3.如果未点赞，可以点赞
-            //3.1 数据库点赞数+1
-            boolean isSuccess = update().setSql("liked = liked + 1").eq("id", id).update();
-            //3.2 保存用户到Redis的sortedset集合
-            if (isSuccess) {
-                stringRedisTemplate.opsForSet().add(key, userId.toString());
-            }
-        } else {
-            //4.如果已点赞，取消点赞
-            //4.1 数据库点赞数-1
-            boolean isSuccess = update().setSql("liked = liked - 1").eq("id", id).update();
-            //4.2 把用户从Redis的set集合移除
-            if (isSuccess) {
-                stringRedisTemplate.opsForSet().remove(key, userId.toString());
-            }
+        // 3.启动时的转换还没完成，先把旧的点赞用户 SET 转换成 ZSET
+        if (!blogLikedMigrator.isMigrated()) {
+            blogLikedMigrator.migrate(BLOG_LIKED_KEY + id);
+        }
+        // 4.执行 lua 脚本，切换点赞状态并记录点赞数增量，增量由 BlogCounterFlusher 定时刷写到数据库
+        List<?> result = stringRedisTemplate.execute(
+                LIKE_SCRIPT,
+                Arrays.asList(BLOG_LIKED_KEY + id, BlogCounterFlusher.deltaKey(BlogCounterFlusher.LIKED)),
+                userId.toString(), id.toString(), String.valueOf(System.currentTimeMillis()));
+        boolean isLike = ((Long) result.get(0)) == 1L;
+        // 5.更新热度，取消点赞时按原来的点赞时间扣减
+        blogHotRanking.onLike(id, isLike, (Long) result.get(1));
+        // 6.返回新的点赞状态和点赞数，点赞数和查询笔记时一样是数据库计数加上未刷写的增量；缓存中的对象是共享的，复制后再计算
+        Blog counted = BeanUtil.copyProperties(blog, Blog.class);
+        mergePendingCounters(Collections.singletonList(counted));
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("isLike", isLike);
+        map.put("liked", counted.getLiked() == null ? 0 : counted.getLiked());
+        return Result.ok(map);
+    }
+
+    @Override
+    public Result queryBlogLikes(Long id, Integer limit) {
+        int n = Math.max(1, Math.min(limit, maxLikers));
+        // 1.按点赞时间查询最早点赞的 n 个用户
+        Set<String> top = stringRedisTemplate.opsForZSet().range(BLOG_LIKED_KEY + id, 0, n - 1);
+        if (top == null || top.isEmpty()) {
+            return Result.ok(Collections.emptyList());
         }
-        return Result.ok();
+        List<Long> ids = top.stream().map(Long::valueOf).collect(Collectors.toList());
+        // 2.一次查询所有用户，IN 查询不保证顺序，按点赞顺序重新排列
+        Map<Long, User> users = userService.listByIds(ids).stream()
+                .collect(Collectors.toMap(User::getId, Function.identity()));
+        List<UserDTO> userDTOS = ids.stream()
+                .map(users::get)
+                .filter(Objects::nonNull)
+                .map(user -> BeanUtil.copyProperties(user, UserDTO.class))
+                .collect(Collectors.toList());
+        return Result.ok(userDTOS);
     }
 }
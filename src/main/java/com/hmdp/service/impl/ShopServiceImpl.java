@@ -1,24 +1,37 @@
 package com.hmdp.service.impl;
 
-import cn.hutool.core.util.BooleanUtil;
+import cn.hutool.core.bean.BeanUtil;
 import cn.hutool.core.util.StrUtil;
-import cn.hutool.json.JSONUtil;
 import com.hmdp.dto.Result;
+import com.hmdp.dto.ScrollResult;
 import com.hmdp.entity.Shop;
 import com.hmdp.mapper.ShopMapper;
 import com.hmdp.service.IShopService;
+import com.baomidou.mybatisplus.extension.plugins.pagination.Page;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
+import com.hmdp.utils.CacheClient;
+import com.hmdp.utils.CacheStrategy;
 import com.hmdp.utils.RedisConstants;
-import com.hmdp.utils.RedisData;
-import org.springframework.data.redis.core.StringRedisTemplate;
+import com.hmdp.utils.ScrollCursor;
+import com.hmdp.utils.ShopBloomFilter;
+import com.hmdp.utils.ShopGeoIndex;
+import com.hmdp.utils.ShopNameIndex;
+import com.hmdp.utils.SystemConstants;
+import org.springframework.data.geo.GeoResult;
+import org.springframework.data.redis.connection.RedisGeoCommands;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import javax.annotation.Resource;
-import java.beans.Transient;
-import java.time.LocalDateTime;
-import java.time.temporal.TemporalAmount;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 /**
  * <p>
@@ -32,20 +45,37 @@ import java.util.concurrent.TimeUnit;
 public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IShopService {
 
     @Resource
-    StringRedisTemplate stringRedisTemplate;
+    private CacheClient cacheClient;
+
+    @Resource
+    private ShopBloomFilter shopBloomFilter;
+
+    @Resource
+    private ShopGeoIndex shopGeoIndex;
+
+    @Resource
+    private ShopNameIndex shopNameIndex;
 
     @Override
     public Result queryById(Long id) {
+        //布隆过滤器判断不存在，直接返回，不访问缓存和数据库
+        if (!shopBloomFilter.mightContain(id)) {
+            return Result.fail("no such shop");
+        }
+
         /*缓存穿透解决方案
         Shop shop = queryWithPassThrough(id);
          */
 
-        //互斥锁解决缓存击穿
+        /*互斥锁解决缓存击穿
         Shop shop = queryWithMutex(id);
+         */
+
+        //逻辑过期解决缓存击穿，过期数据由后台线程重建，热点店铺的请求不会阻塞在数据库上
+        Shop shop = queryWithLogicalExpire(id);
         if(shop == null){
             return Result.fail("no such shop");
         }
-        System.out.println("shop: " + shop);
         return  Result.ok(shop);
 
     }
@@ -53,56 +83,9 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
     /**
      * 互斥锁解决缓存击穿
      */
-    public  Shop queryWithMutex(Long id){
-        //1. 从 redis 里面查询
-        String shopCacheJson = stringRedisTemplate.opsForValue().get(RedisConstants.CACHE_SHOP_KEY + id);
-        System.out.println("redis 里面的" + shopCacheJson);
-        if(StrUtil.isNotBlank(shopCacheJson)){ //2.有就转成 shop 对象直接返回
-            // TODO Json->shop出问题
-            Shop shop = JSONUtil.toBean(shopCacheJson, Shop.class);
-            System.out.println("redis 里面有");
-            System.out.println("shop" + shop);
-            return shop;
-        }
-        //判断的命中是否是空字符串
-        if(shopCacheJson !=null){
-            //shopCacheJson =="" 说明是之前防止缓存穿透存入的"" 空值
-            return null;
-        }
-
-        //3. 没有就从数据库里面查询
-        //3.1 获取互斥锁
-        String lockKey = RedisConstants.LOCK_SHOP_KEY + id;
-        Shop shop = null;
-        try {
-            boolean isLock = tryLock(lockKey);
-            //3.2 判断是否获得互斥锁
-            if (!isLock) {
-                //3.3 失败则休眠并重试
-                Thread.sleep(50);
-                return queryWithMutex(id);
-            }
-            //3.4 获取互斥锁成功则查询数据库并写入缓存
-            shop = getById(id);
-            //模拟缓存重建时延
-            Thread.sleep(200);
-            //4. 没有返回错误
-            if(shop == null){
-                //将id 对应的空字符串(注意不是 null)写入 redis，防止缓存穿透
-                stringRedisTemplate.opsForValue().set(RedisConstants.CACHE_SHOP_KEY + id,"",RedisConstants.CACHE_NULL_TTL, TimeUnit.MINUTES);
-                return null;
-            }
-            //5. 数据库里面有，需要添加到 redis 缓存里面，添加超时时间，兜底方案（缓存一致性）
-            stringRedisTemplate.opsForValue().set(RedisConstants.CACHE_SHOP_KEY + id,JSONUtil.toJsonStr(shop),RedisConstants.CACHE_SHOP_TTL, TimeUnit.MINUTES);
-
-        }catch (Exception e){
-            throw new RuntimeException(e);
-        }finally {
-            //6. 释放互斥锁
-            unlock(lockKey);
-        }
-        //7. 返回店铺信息
-        return shop;
+    public Shop queryWithMutex(Long id){
+        return cacheClient.get(RedisConstants.CACHE_SHOP_KEY, id, Shop.class, this::getById,
+                RedisConstants.CACHE_SHOP_TTL, TimeUnit.MINUTES, CacheStrategy.MUTEX);
     }
 
     /**
@@ -111,55 +94,127 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
      * @return
      */
     public Shop queryWithPassThrough(Long id){
-        //1. 从 redis 里面查询
-        String shopCacheJson = stringRedisTemplate.opsForValue().get(RedisConstants.CACHE_SHOP_KEY + id);
-        if(StrUtil.isNotBlank(shopCacheJson)){ //2.有就转成 shop 对象直接返回
-            Shop shop = JSONUtil.toBean(shopCacheJson, Shop.class);
-            return shop;
+        return cacheClient.get(RedisConstants.CACHE_SHOP_KEY, id, Shop.class, this::getById,
+                RedisConstants.CACHE_SHOP_TTL, TimeUnit.MINUTES, CacheStrategy.PASS_THROUGH);
+    }
+
+    /**
+     * 逻辑过期解决缓存击穿
+     */
+    public Shop queryWithLogicalExpire(Long id){
+        return cacheClient.get(RedisConstants.CACHE_SHOP_KEY, id, Shop.class, this::getById,
+                RedisConstants.CACHE_SHOP_TTL, TimeUnit.MINUTES, CacheStrategy.LOGICAL_EXPIRE);
+    }
+
+    @Override
+    public List<Shop> queryByIds(Collection<Long> ids) {
+        //1、过滤掉一定不存在的店铺
+        List<Long> validIds = ids.stream().filter(shopBloomFilter::mightContain).collect(Collectors.toList());
+        if (validIds.isEmpty()) {
+            return new ArrayList<>();
         }
-        //判断的命中是否是空字符串
-        if(shopCacheJson !=null){
-            //shopCacheJson =="" 说明是之前防止缓存穿透存入的"" 空值
-            return null;
+        //2、一次 MGET 查询缓存，未命中的店铺一次 listByIds 查询数据库并回写缓存
+        Map<Long, Shop> shops = cacheClient.getAll(RedisConstants.CACHE_SHOP_KEY, validIds, Shop.class,
+                missIds -> listByIds(missIds).stream().collect(Collectors.toMap(Shop::getId, Function.identity())),
+                RedisConstants.CACHE_SHOP_TTL, TimeUnit.MINUTES, CacheStrategy.LOGICAL_EXPIRE);
+        return new ArrayList<>(shops.values());
+    }
+
+    @Override
+    public Result queryShopByType(Integer typeId, Integer current, Double x, Double y) {
+        //1、不需要按距离查询，直接分页查询数据库
+        if (x == null || y == null) {
+            Page<Shop> page = query()
+                    .eq("type_id", typeId)
+                    .page(new Page<>(current, SystemConstants.DEFAULT_PAGE_SIZE));
+            return Result.ok(page.getRecords());
         }
-        //3. 没有就从数据库里面查询
-        Shop shop = getById(id);
-        //4. 没有返回错误
-        if(shop == null){
-            //将id 对应的空字符串(注意不是 null)写入 redis，防止缓存穿透
-            stringRedisTemplate.opsForValue().set(RedisConstants.CACHE_SHOP_KEY + id,"",RedisConstants.CACHE_NULL_TTL, TimeUnit.MINUTES);
-            return null;
+        //2、按距离由近到远查询当前页的店铺 id
+        int from = (current - 1) * SystemConstants.DEFAULT_PAGE_SIZE;
+        int end = current * SystemConstants.DEFAULT_PAGE_SIZE;
+        List<GeoResult<RedisGeoCommands.GeoLocation<String>>> results =
+                shopGeoIndex.search(typeId.longValue(), x, y, from, end);
+        if (results.isEmpty()) {
+            return Result.ok(Collections.emptyList());
+        }
+        Map<Long, Double> distances = new LinkedHashMap<>(results.size() * 4 / 3 + 1);
+        for (GeoResult<RedisGeoCommands.GeoLocation<String>> result : results) {
+            distances.put(Long.valueOf(result.getContent().getName()), result.getDistance().getValue());
         }
-        //5. 数据库里面有，需要添加到 redis 缓存里面，添加超时时间，兜底方案（缓存一致性）
-        stringRedisTemplate.opsForValue().set(RedisConstants.CACHE_SHOP_KEY + id,JSONUtil.toJsonStr(shop),RedisConstants.CACHE_SHOP_TTL, TimeUnit.MINUTES);
-        //6. 返回店铺信息
-        return shop;
+        //3、通过店铺缓存批量查询详情，缓存中的对象是共享的，复制一份再设置距离
+        List<Shop> shops = queryByIds(distances.keySet()).stream()
+                .map(shop -> BeanUtil.copyProperties(shop, Shop.class).setDistance(distances.get(shop.getId())))
+                .collect(Collectors.toList());
+        return Result.ok(shops);
     }
 
-    public Shop queryWithLogicalExpire(Long id){
-        //1. 从 redis 里面查询
-        String shopCacheJson = stringRedisTemplate.opsForValue().get(RedisConstants.CACHE_SHOP_KEY + id);
-        if(StrUtil.isBlank(shopCacheJson)){ //2.不存在直接返回
-            return null;
+    @Override
+    public Result queryShopByName(String name, Integer current) {
+        //1、没有关键字或者索引还在构建，分页查询数据库
+        if (StrUtil.isBlank(name) || !shopNameIndex.isReady()) {
+            Page<Shop> page = query()
+                    .like(StrUtil.isNotBlank(name), "name", name)
+                    .page(new Page<>(current, SystemConstants.MAX_PAGE_SIZE));
+            return Result.ok(page.getRecords());
         }
-        //3. 没有就从数据库里面查询
-        Shop shop = getById(id);
+        //2、从名称索引中查询当前页的店铺 id
+        List<Long> ids = shopNameIndex.search(name,
+                (current - 1) * SystemConstants.MAX_PAGE_SIZE, SystemConstants.MAX_PAGE_SIZE);
+        //3、通过店铺缓存批量查询详情
+        return Result.ok(queryByIds(ids));
+    }
 
-        //5. 数据库里面有，需要添加到 redis 缓存里面，添加超时时间，兜底方案（缓存一致性）
-        stringRedisTemplate.opsForValue().set(RedisConstants.CACHE_SHOP_KEY + id,JSONUtil.toJsonStr(shop),RedisConstants.CACHE_SHOP_TTL, TimeUnit.MINUTES);
-        //6. 返回店铺信息
-        return shop;
+    @Override
+    public Result scrollShopByType(Integer typeId, String cursor) {
+        ScrollCursor last = ScrollCursor.decode(cursor);
+        //按 id 向后查询一页，不需要 OFFSET 和 COUNT
+        List<Shop> shops = query()
+                .eq("type_id", typeId)
+                .gt(last != null, "id", last == null ? null : last.getId())
+                .orderByAsc("id")
+                .last("limit " + SystemConstants.DEFAULT_PAGE_SIZE)
+                .list();
+        return Result.ok(toScrollResult(shops, lastIdOfFullPage(
+                shops.stream().map(Shop::getId).collect(Collectors.toList()), SystemConstants.DEFAULT_PAGE_SIZE)));
     }
 
-    //尝试获取互斥锁
-    private boolean tryLock(String key) { //返回值是boolean 而 flag 是 Boolean
-        Boolean flag = stringRedisTemplate.opsForValue().setIfAbsent(key, "1", 10, TimeUnit.SECONDS);//添加 ttl 防止 unlock 执行不了的时候一直被锁
-        return BooleanUtil.isTrue(flag);
+    @Override
+    public Result scrollShopByName(String name, String cursor) {
+        ScrollCursor last = ScrollCursor.decode(cursor);
+        long afterId = last == null ? 0 : last.getId();
+        List<Shop> shops;
+        List<Long> ids;
+        if (StrUtil.isBlank(name) || !shopNameIndex.isReady()) {
+            shops = query()
+                    .like(StrUtil.isNotBlank(name), "name", name)
+                    .gt("id", afterId)
+                    .orderByAsc("id")
+                    .last("limit " + SystemConstants.MAX_PAGE_SIZE)
+                    .list();
+            ids = shops.stream().map(Shop::getId).collect(Collectors.toList());
+        } else {
+            //缓存中查不到的店铺（例如刚删除）会被忽略，游标按索引返回的 id 计算，不能按查到的店铺数
+            ids = shopNameIndex.searchAfter(name, afterId, SystemConstants.MAX_PAGE_SIZE);
+            shops = queryByIds(ids);
+        }
+        return Result.ok(toScrollResult(shops, lastIdOfFullPage(ids, SystemConstants.MAX_PAGE_SIZE)));
+    }
+
+    /**
+     * @param ids 本页查到的 id，按查询顺序
+     * @return 满一页时返回最后一个 id；不满一页说明没有更多数据，返回 null
+     */
+    private static Long lastIdOfFullPage(List<Long> ids, int pageSize) {
+        return ids.size() == pageSize ? ids.get(ids.size() - 1) : null;
     }
 
-    //删除互斥锁
-    private void unlock(String key) {
-        stringRedisTemplate.delete(key);
+    private ScrollResult toScrollResult(List<Shop> shops, Long lastId) {
+        ScrollResult r = new ScrollResult();
+        r.setList(shops);
+        if (lastId != null) {
+            r.setCursor(new ScrollCursor(lastId, lastId).encode());
+        }
+        return r;
     }
 
     @Override
@@ -168,27 +223,58 @@ public class ShopServiceImpl extends ServiceImpl<ShopMapper, Shop> implements IS
         if(shop.getId() == null){
             return Result.fail("shop id can't be null");
         }
+        //位置或类型变化时需要更新 GEO 索引，先查出修改前的店铺
+        boolean moved = shop.getTypeId() != null || shop.getX() != null || shop.getY() != null;
+        Shop old = moved ? getById(shop.getId()) : null;
         //1、更新数据库
         updateById(shop);
         //2、删除缓存
-        stringRedisTemplate.delete(RedisConstants.CACHE_SHOP_KEY + shop.getId());
+        cacheClient.delete(RedisConstants.CACHE_SHOP_KEY + shop.getId());
+        //3、更新 GEO 索引和名称索引
+        if (old != null) {
+            shopGeoIndex.update(old, getById(shop.getId()));
+        }
+        shopNameIndex.put(shop);
         return Result.ok();
     }
 
+    @Override
+    @Transactional
+    public Result deleteShop(Long id) {
+        Shop shop = getById(id);
+        if (shop == null) {
+            return Result.fail("店铺不存在！");
+        }
+        //1、删除数据库
+        removeById(id);
+        //2、删除缓存
+        cacheClient.delete(RedisConstants.CACHE_SHOP_KEY + id);
+        //3、从 GEO 索引和名称索引中删除，布隆过滤器不支持删除，之后的查询会缓存空值
+        shopGeoIndex.remove(shop);
+        shopNameIndex.remove(id);
+        return Result.ok();
+    }
+
+    @Override
+    public Result saveShop(Shop shop) {
+        //1、写入数据库
+        save(shop);
+        //2、加入布隆过滤器和 GEO 索引
+        shopBloomFilter.put(shop.getId());
+        shopGeoIndex.update(null, shop);
+        shopNameIndex.put(shop);
+        //3、返回店铺id
+        return Result.ok(shop.getId());
+    }
+
     /**
      * 逻辑过期时间
      * @param id
      * @param expireSeconds
      */
     public void saveShop2Reedis(Long id, Long expireSeconds){
-        //查询出shop
+        //查询出shop，封装成RedisData存入 redis
         Shop shop = getById(id);
-        //封装成RedisData
-        RedisData redisData = new RedisData();
-        redisData.setData(shop);
-        redisData.setExpireTime(LocalDateTime.now().plusSeconds(expireSeconds));
-        //存入 redis
-        stringRedisTemplate.opsForValue().set(RedisConstants.CACHE_SHOP_KEY + id,JSONUtil.toJsonStr(redisData));
-
+        cacheClient.setWithLogicalExpire(RedisConstants.CACHE_SHOP_KEY + id, shop, expireSeconds, TimeUnit.SECONDS);
     }
 }
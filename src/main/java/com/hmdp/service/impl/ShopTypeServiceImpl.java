@@ -1,16 +1,23 @@
 package com.hmdp.service.impl;
 
 import cn.hutool.core.util.StrUtil;
+import cn.hutool.crypto.SecureUtil;
 import cn.hutool.json.JSONUtil;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.hmdp.dto.ResponseSnapshot;
 import com.hmdp.dto.Result;
 import com.hmdp.entity.ShopType;
 import com.hmdp.mapper.ShopTypeMapper;
 import com.hmdp.service.IShopTypeService;
 import com.baomidou.mybatisplus.extension.service.impl.ServiceImpl;
 import com.hmdp.utils.RedisConstants;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PostConstruct;
 import javax.annotation.Resource;
 import java.util.List;
 
@@ -18,30 +25,90 @@ import java.util.List;
  * <p>
  *  服务实现类
  * </p>
+ * 商户类型几乎不会变化，在内存中保存一份序列化好的快照。
+ * 后台定时检查 Redis 中的版本号，版本变化时才重新加载，请求本身不访问 Redis，也不需要序列化
  *
  * @author 虎哥
  * @since 2021-12-22
  */
+@Slf4j
 @Service
 public class ShopTypeServiceImpl extends ServiceImpl<ShopTypeMapper, ShopType> implements IShopTypeService {
     @Resource
     StringRedisTemplate stringRedisTemplate;
+    @Resource
+    private ObjectMapper objectMapper;
+
+    private volatile String version;
+    private volatile List<ShopType> typeList;
+    private volatile ResponseSnapshot snapshot;
+
+    @PostConstruct
+    private void init() {
+        refreshIfChanged();
+    }
+
     @Override
     public Result queryTypeList() {
+        return Result.ok(typeList);
+    }
+
+    @Override
+    public ResponseSnapshot queryTypeListSnapshot() {
+        return snapshot;
+    }
+
+    @Override
+    public void refreshTypeList() {
+        // 1.删除缓存，下次加载时重新查询数据库
+        stringRedisTemplate.delete(RedisConstants.SHOP_LIST);
+        // 2.增加版本号，所有实例检查到版本变化后重新加载
+        stringRedisTemplate.opsForValue().increment(RedisConstants.SHOP_TYPE_VERSION_KEY);
+        refreshIfChanged();
+    }
+
+    /**
+     * 定时检查版本号，每个实例每个周期只访问一次 Redis
+     */
+    @Scheduled(fixedDelayString = "${hmdp.shop-type.refresh-ms:5000}")
+    public void refreshIfChanged() {
+        try {
+            String current = StrUtil.nullToDefault(
+                    stringRedisTemplate.opsForValue().get(RedisConstants.SHOP_TYPE_VERSION_KEY), "0");
+            if (current.equals(version)) {
+                return;
+            }
+            List<ShopType> list = loadTypeList();
+            byte[] body = objectMapper.writeValueAsBytes(Result.ok(list));
+            typeList = list;
+            snapshot = new ResponseSnapshot("\"" + current + "-" + SecureUtil.md5().digestHex(body).substring(0, 16) + "\"", body);
+            version = current;
+            log.debug("商户类型快照已更新, 版本: {}", current);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("序列化商户类型失败", e);
+        } catch (Exception e) {
+            // Redis 不可用时继续使用旧快照
+            if (snapshot == null) {
+                throw e;
+            }
+            log.warn("刷新商户类型快照失败", e);
+        }
+    }
+
+    private List<ShopType> loadTypeList() {
         String key = RedisConstants.SHOP_LIST;
         // 1.从redis查询商户类型缓存
         String typeJson = stringRedisTemplate.opsForValue().get(key);
         // 2.判断是否存在
         if (StrUtil.isNotBlank(typeJson)) {
             // 3.存在直接返回
-            List<ShopType> shopTypeList = JSONUtil.toList(typeJson, ShopType.class);
-            return Result.ok(shopTypeList);
+            return JSONUtil.toList(typeJson, ShopType.class);
         }
         // 4.不存在，根据商户类型id查询数据库
         List<ShopType> shopTypeList = query().orderByAsc("sort").list();
         // 5.存在，写入redis
         stringRedisTemplate.opsForValue().set(key, JSONUtil.toJsonStr(shopTypeList));
         // 6.返回
-        return Result.ok(shopTypeList);
+        return shopTypeList;
     }
 }
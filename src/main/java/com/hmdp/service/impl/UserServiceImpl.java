@@ -11,6 +11,8 @@ import com.hmdp.dto.UserDTO;
 import com.hmdp.entity.User;
 import com.hmdp.mapper.UserMapper;
 import com.hmdp.service.IUserService;
+import com.hmdp.utils.CacheClient;
+import com.hmdp.utils.CacheStrategy;
 import com.hmdp.utils.RegexUtils;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.catalina.realm.UserDatabaseRealm;
@@ -21,11 +23,13 @@ import org.springframework.stereotype.Service;
 import javax.annotation.Resource;
 import javax.management.modelmbean.ModelMBeanInfoSupport;
 import javax.servlet.http.HttpSession;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Random;
 import java.util.UUID;
 import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
 
 import static com.hmdp.utils.RedisConstants.*;
 import static com.hmdp.utils.SystemConstants.USER_NICK_NAME_PREFIX;
@@ -44,6 +48,8 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements IU
 
     @Resource
     private StringRedisTemplate stringRedisTemplate;
+    @Resource
+    private CacheClient cacheClient;
 
     @Override
     public Result sendCode(String phone, HttpSession session) {
@@ -105,6 +111,28 @@ public class UserServiceImpl extends ServiceImpl<UserMapper, User> implements IU
         return Result.ok(token);
     }
 
+    @Override
+    public Result queryUserById(Long userId) {
+        // 查询用户，只缓存对外展示的 UserDTO
+        UserDTO userDTO = cacheClient.get(CACHE_USER_KEY, userId, UserDTO.class, id -> {
+            User user = getById(id);
+            return user == null ? null : BeanUtil.copyProperties(user, UserDTO.class);
+        }, CACHE_USER_TTL, TimeUnit.MINUTES, CacheStrategy.PASS_THROUGH);
+        if (userDTO == null) {
+            return Result.ok();
+        }
+        return Result.ok(userDTO);
+    }
+
+    @Override
+    public Map<Long, UserDTO> queryUserDTOs(Collection<Long> ids) {
+        // 一次 MGET，未命中的用户一次查询数据库
+        return cacheClient.getAll(CACHE_USER_KEY, ids, UserDTO.class,
+                missIds -> listByIds(missIds).stream()
+                        .collect(Collectors.toMap(User::getId, user -> BeanUtil.copyProperties(user, UserDTO.class))),
+                CACHE_USER_TTL, TimeUnit.MINUTES, CacheStrategy.PASS_THROUGH);
+    }
+
     private User saveUserWithPhone(String phone) {
         User user = new User();
         user.setPhone(phone);
@@ -8,12 +8,17 @@ import com.hmdp.mapper.VoucherOrderMapper;
 import com.hmdp.service.ISeckillVoucherService;
 import com.hmdp.service.IVoucherOrderService;
 import com.hmdp.utils.RedisIdWorker;
+import com.hmdp.utils.SeckillSoldOutRegistry;
+import com.hmdp.utils.SeckillStockShards;
 import com.hmdp.utils.UserHolder;
 import lombok.extern.slf4j.Slf4j;
 import org.redisson.api.RLock;
 import org.redisson.api.RedissonClient;
-import org.springframework.aop.framework.AopContext;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
 import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.RedisZSetCommands;
 import org.springframework.data.redis.connection.stream.*;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.data.redis.core.script.DefaultRedisScript;
@@ -21,15 +26,13 @@ import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import javax.annotation.Resource;
 import java.time.Duration;
-import java.util.Collections;
-import java.util.List;
-import java.util.Map;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.BlockingQueue;
+import java.util.*;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.stream.Collectors;
 
 /**
  * <p>
@@ -46,6 +49,10 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
     private ISeckillVoucherService seckillVoucherService;
     @Resource
     private RedisIdWorker redisIdWorker;
+    @Resource
+    private SeckillSoldOutRegistry soldOutRegistry;
+    @Resource
+    private SeckillStockShards stockShards;
 
     @Resource
     private RedissonClient redissonClient;
@@ -53,22 +60,102 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
     private StringRedisTemplate stringRedisTemplate;
 
     private static final DefaultRedisScript<Long> SECKILL_SCRIPT;
+    private static final DefaultRedisScript<Long> SECKILL_SHARD_SCRIPT;
+    private static final DefaultRedisScript<Long> SECKILL_RESERVE_SCRIPT;
+    private static final DefaultRedisScript<Long> STREAM_INIT_SCRIPT;
 
     static {
         SECKILL_SCRIPT = new DefaultRedisScript<>();
         SECKILL_SCRIPT.setLocation(new ClassPathResource("seckill.lua"));
         SECKILL_SCRIPT.setResultType(Long.class);
+
+        SECKILL_SHARD_SCRIPT = new DefaultRedisScript<>();
+        SECKILL_SHARD_SCRIPT.setLocation(new ClassPathResource("seckill_shard.lua"));
+        SECKILL_SHARD_SCRIPT.setResultType(Long.class);
+
+        SECKILL_RESERVE_SCRIPT = new DefaultRedisScript<>();
+        SECKILL_RESERVE_SCRIPT.setLocation(new ClassPathResource("seckill_reserve.lua"));
+        SECKILL_RESERVE_SCRIPT.setResultType(Long.class);
+
+        STREAM_INIT_SCRIPT = new DefaultRedisScript<>();
+        STREAM_INIT_SCRIPT.setLocation(new ClassPathResource("stream_init.lua"));
+        STREAM_INIT_SCRIPT.setResultType(Long.class);
     }
 
+    /**
+     * 自己的事务代理，消费者线程在 @PostConstruct 中启动，重启后可能在第一次秒杀请求之前就处理积压的订单，
+     * 所以不能等到 secKillVoucher 中再通过 AopContext 获取
+     */
+    @Lazy
+    @Resource
     private IVoucherOrderService proxy;
 
-    private static final ExecutorService SECKILL_ORDER_EXECUTOR = Executors.newSingleThreadExecutor();
+    private static final String QUEUE_NAME = "stream.orders";
+    private static final String GROUP_NAME = "g1";
+    /**
+     * 未领到分区或分区不足时，重新尝试领取分区的间隔
+     */
+    private static final long LEASE_RETRY_MILLIS = 5000L;
+    /**
+     * 在线消费者集合，member 是消费者名称，score 是最近一次心跳的时间
+     */
+    private static final String CONSUMERS_KEY = "seckill:order:consumers";
+    /**
+     * 超过这个时间没有心跳的消费者视为下线
+     */
+    private static final long CONSUMER_TTL_MILLIS = 3 * LEASE_RETRY_MILLIS;
+
+    /**
+     * 当前实例的消费者线程数，每个线程使用独立的消费者名称
+     */
+    @Value("${hmdp.seckill.order.consumers:1}")
+    private int consumers;
+    /**
+     * 消费者名称前缀，多实例部署时每个实例需要不同的前缀
+     */
+    @Value("${hmdp.seckill.order.consumer-prefix:c}")
+    private String consumerPrefix;
+    /**
+     * 每个消费者最多独占的分区数，0 表示按所有实例的在线消费者数平分：ceil(partitions / 在线消费者数)
+     */
+    @Value("${hmdp.seckill.order.max-partitions-per-consumer:0}")
+    private int maxPartitionsPerConsumer;
+
+    /**
+     * 每次最多读取、一起落库的订单数，XREADGROUP 的 COUNT 是对每个 stream 生效的，按持有的分区数平分
+     */
+    @Value("${hmdp.seckill.order.batch-size:100}")
+    private int batchSize;
+    /**
+     * 凑批的最长等待时间（毫秒），超时后不满一批也直接落库
+     */
+    @Value("${hmdp.seckill.order.linger-ms:50}")
+    private long lingerMillis;
+    /**
+     * pending-list 中的消息最多投递的次数，超过后转入死信 stream 并确认，避免一条毒消息阻塞整个分区
+     */
+    @Value("${hmdp.seckill.order.max-deliveries:5}")
+    private long maxDeliveries;
+
+    private ExecutorService seckillOrderExecutor;
+
+    private volatile boolean running = true;
 
     @PostConstruct
     private void init() {
-        SECKILL_ORDER_EXECUTOR.submit(new VoucherOrderHandler());
+        seckillOrderExecutor = Executors.newFixedThreadPool(consumers);
+        for (int i = 1; i <= consumers; i++) {
+            seckillOrderExecutor.submit(new VoucherOrderHandler(consumerPrefix + i));
+        }
+    }
+
+    @PreDestroy
+    private void destroy() {
+        running = false;
+        seckillOrderExecutor.shutdown();
     }
 
+
     /*
     //阻塞队列
     private BlockingQueue<VoucherOrder> orderTasks = new ArrayBlockingQueue<>(1024 * 1024);
@@ -94,12 +181,11 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
         // 2.创建锁对象
         RLock redisLock = redissonClient.getLock("lock:order:" + userId);
         // 3.尝试获取锁
-        boolean isLock = redisLock.isLocked();
+        boolean isLock = redisLock.tryLock();
         // 4.判断是否获得锁成功
         if (!isLock) {
-            // 获取锁失败，直接返回失败或者重试
-            log.error("不允许重复下单！");
-            return;
+            // 获取锁失败，抛出异常，消息留在 pending-list 中稍后重试，不能确认消息，否则订单会丢失
+            throw new IllegalStateException("获取用户锁失败, userId: " + userId);
         }
         try {
             //注意：由于是spring的事务是放在threadLocal中，此时的是多线程，事务会失效
@@ -110,45 +196,200 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
         }
     }
 
+    /**
+     * 每个消费者线程通过 Redisson 锁独占若干分区，一个分区同一时刻只有一个消费者在消费，
+     * 同一用户对同一张券的订单总在同一个分区，按顺序处理；实例宕机后锁过期，分区会被其它消费者接管。
+     * 消费者定时在 seckill:order:consumers 中心跳，按在线消费者数计算自己应持有的分区数，
+     * 新实例加入后，持有过多分区的消费者释放多余的分区，由新实例领取
+     */
     private class VoucherOrderHandler implements Runnable {
+        private final String consumerName;
+        private final Map<String, RLock> leases = new LinkedHashMap<>();
+        private long nextLeaseTime;
+
+        VoucherOrderHandler(String consumerName) {
+            this.consumerName = consumerName;
+        }
+
         @Override
         public void run() {
-            while (true) {
-                try {
-                    // 1.获取消息队列中的订单信息 XREADGROUP GROUP g1 c1 COUNT 1 BLOCK 2000 STREAMS stream.orders >
-                    List<MapRecord<String, Object, Object>> list = stringRedisTemplate.opsForStream().read(
-                            Consumer.from("g1", "c1"),
-                            StreamReadOptions.empty().count(1).block(Duration.ofSeconds(2)),
-                            StreamOffset.create("stream.orders", ReadOffset.lastConsumed())
-                    );
-                    // 2.判断订单信息是否为空
-                    if (list == null || list.isEmpty()) {
-                        // 如果为null，说明没有消息，继续下一次循环
-                        continue;
+            try {
+                while (running) {
+                    try {
+                        // 0.领取分区
+                        acquirePartitions();
+                        if (leases.isEmpty()) {
+                            Thread.sleep(LEASE_RETRY_MILLIS);
+                            continue;
+                        }
+                        // 1.批量获取消息队列中的订单信息 XREADGROUP GROUP g1 c1 COUNT n BLOCK 2000 STREAMS stream.orders:0 ... > ...
+                        List<MapRecord<String, Object, Object>> records = readBatch();
+                        // 2.判断订单信息是否为空
+                        if (records.isEmpty()) {
+                            // 如果为空，说明没有消息，继续下一次循环
+                            continue;
+                        }
+                        // 3.批量创建订单并确认消息，有失败的订单时处理 pending-list
+                        if (!handleVoucherOrderBatch(records)) {
+                            handlePendingList();
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        break;
+                    } catch (Exception e) {
+                        log.error("处理订单异常", e);
+                        //处理异常消息
+                        handlePendingList();
                     }
-                    // 解析数据
-                    MapRecord<String, Object, Object> record = list.get(0);
-                    Map<Object, Object> value = record.getValue();
-                    VoucherOrder voucherOrder = BeanUtil.fillBeanWithMap(value, new VoucherOrder(), true);
-                    // 3.创建订单
-                    handleVoucherOrder(voucherOrder);
-                    // 4.确认消息 XACK
-                    stringRedisTemplate.opsForStream().acknowledge("s1", "g1", record.getId());
-                } catch (Exception e) {
-                    log.error("处理订单异常", e);
-                    //处理异常消息
-                    handlePendingList();
                 }
+            } finally {
+                releasePartitions();
+            }
+        }
+
+        private void acquirePartitions() {
+            long now = System.currentTimeMillis();
+            if (now < nextLeaseTime) {
+                return;
+            }
+            nextLeaseTime = now + LEASE_RETRY_MILLIS;
+            // 1.丢弃已经失效的分区锁（例如 Redis 抖动导致锁过期被别人抢走）。每个分区锁的检查是一次 Redis 往返，
+            // 只在心跳间隔检查；看门狗默认 30 秒过期、每 10 秒续期，间隔远小于锁的有效期
+            leases.entrySet().removeIf(entry -> !entry.getValue().isHeldByCurrentThread());
+            // 2.心跳，并计算应持有的分区数，持有过多时释放多余的分区
+            int maxOwned = fairShare(now);
+            releaseExtra(maxOwned);
+            if (leases.size() >= maxOwned) {
+                return;
+            }
+            // 3.尝试领取空闲分区，不指定 leaseTime，由看门狗续期
+            boolean acquired = false;
+            for (int p = 0; p < stockShards.getPartitions() && leases.size() < maxOwned; p++) {
+                String streamKey = stockShards.streamKey(p);
+                if (leases.containsKey(streamKey)) {
+                    continue;
+                }
+                RLock lease = redissonClient.getLock("lock:" + streamKey);
+                if (!lease.tryLock()) {
+                    continue;
+                }
+                // 4.创建消费者组，并认领之前的消费者遗留在 pending-list 中的消息
+                Long claimed = stringRedisTemplate.execute(
+                        STREAM_INIT_SCRIPT,
+                        Collections.singletonList(streamKey),
+                        GROUP_NAME, consumerName
+                );
+                leases.put(streamKey, lease);
+                acquired = true;
+                log.info("消费者 {} 领取分区 {}，认领 pending 消息 {} 条", consumerName, streamKey, claimed);
+            }
+            if (acquired) {
+                handlePendingList();
+            }
+        }
+
+        /**
+         * 配置了 max-partitions-per-consumer 时直接使用，否则按在线消费者数平分所有分区
+         */
+        private int fairShare(long now) {
+            if (maxPartitionsPerConsumer > 0) {
+                return maxPartitionsPerConsumer;
+            }
+            stringRedisTemplate.opsForZSet().add(CONSUMERS_KEY, consumerName, now);
+            stringRedisTemplate.opsForZSet().removeRangeByScore(CONSUMERS_KEY, 0, now - CONSUMER_TTL_MILLIS);
+            Long live = stringRedisTemplate.opsForZSet().zCard(CONSUMERS_KEY);
+            int n = live == null || live < 1 ? 1 : live.intValue();
+            int partitions = stockShards.getPartitions();
+            return (partitions + n - 1) / n;
+        }
+
+        /**
+         * 释放超出份额的分区。消息是同步处理的，释放时没有处理到一半的消息，
+         * 已投递未确认的消息由新的持有者在领取时认领
+         */
+        private void releaseExtra(int maxOwned) {
+            Iterator<Map.Entry<String, RLock>> iterator = leases.entrySet().iterator();
+            int extra = leases.size() - maxOwned;
+            while (extra > 0 && iterator.hasNext()) {
+                Map.Entry<String, RLock> entry = iterator.next();
+                unlock(entry.getValue());
+                iterator.remove();
+                extra--;
+                log.info("消费者 {} 释放分区 {}，用于重新平衡", consumerName, entry.getKey());
+            }
+        }
+
+        private void releasePartitions() {
+            leases.values().forEach(this::unlock);
+            leases.clear();
+            try {
+                stringRedisTemplate.opsForZSet().remove(CONSUMERS_KEY, consumerName);
+            } catch (Exception e) {
+                log.warn("注销消费者失败", e);
+            }
+        }
+
+        private void unlock(RLock lease) {
+            try {
+                lease.unlock();
+            } catch (Exception e) {
+                log.warn("释放分区锁失败", e);
+            }
+        }
+
+        /**
+         * @param count 本次最多读取的总条数，XREADGROUP 的 COUNT 对每个 stream 生效，按分区数平分
+         */
+        @SuppressWarnings("unchecked")
+        private List<MapRecord<String, Object, Object>> read(int count, Duration block) {
+            int perStream = Math.max(1, count / leases.size());
+            StreamOffset<String>[] offsets = leases.keySet().stream()
+                    .map(streamKey -> StreamOffset.create(streamKey, ReadOffset.lastConsumed()))
+                    .toArray(StreamOffset[]::new);
+            return stringRedisTemplate.opsForStream().read(
+                    Consumer.from(GROUP_NAME, consumerName),
+                    StreamReadOptions.empty().count(perStream).block(block),
+                    offsets
+            );
+        }
+
+        /**
+         * 先阻塞等待第一条消息，之后在 linger 时间内继续凑批，直到凑满 batchSize
+         */
+        private List<MapRecord<String, Object, Object>> readBatch() {
+            List<MapRecord<String, Object, Object>> list = read(batchSize, Duration.ofSeconds(2));
+            if (list == null || list.isEmpty()) {
+                return Collections.emptyList();
+            }
+            List<MapRecord<String, Object, Object>> records = new ArrayList<>(list);
+            long deadline = System.currentTimeMillis() + lingerMillis;
+            while (records.size() < batchSize) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    break;
+                }
+                List<MapRecord<String, Object, Object>> more = read(batchSize - records.size(), Duration.ofMillis(remaining));
+                if (more == null || more.isEmpty()) {
+                    break;
+                }
+                records.addAll(more);
             }
+            return records;
         }
 
         private void handlePendingList() {
-            String queueName = "stream.orders";
-            while (true) {
+            for (String queueName : leases.keySet()) {
+                handlePendingList(queueName);
+            }
+        }
+
+        private void handlePendingList(String queueName) {
+            while (running) {
+                MapRecord<String, Object, Object> record = null;
                 try {
-                    // 1.获取pending-list中的订单信息 XREADGROUP GROUP g1 c1 COUNT 1 BLOCK 2000 STREAMS s1 0
+                    // 1.获取pending-list中的订单信息 XREADGROUP GROUP g1 c1 COUNT 1 STREAMS stream.orders 0
                     List<MapRecord<String, Object, Object>> list = stringRedisTemplate.opsForStream().read(
-                            Consumer.from("g1", "c1"),
+                            Consumer.from(GROUP_NAME, consumerName),
                             StreamReadOptions.empty().count(1),
                             StreamOffset.create(queueName, ReadOffset.from("0"))
                     );
@@ -158,15 +399,18 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
                         break;
                     }
                     // 3. 解析消息中的数据
-                    MapRecord<String, Object, Object> record = list.get(0);
+                    record = list.get(0);
                     Map<Object, Object> value = record.getValue();
                     VoucherOrder voucherOrder = BeanUtil.fillBeanWithMap(value, new VoucherOrder(), true);
                     // 4.创建订单
                    handleVoucherOrder(voucherOrder);
                     // 5.确认消息 XACK，从 pending 队列中移除
-                    stringRedisTemplate.opsForStream().acknowledge("s1", "g1", record.getId());
+                    stringRedisTemplate.opsForStream().acknowledge(queueName, GROUP_NAME, record.getId());
                 } catch (Exception e) {
                     log.error("处理pendding订单异常", e);
+                    if (record != null && deadLetterIfExhausted(queueName, record, e)) {
+                        continue;
+                    }
                     try{
                         Thread.sleep(20);
                     }catch(Exception e1){
@@ -177,6 +421,118 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
         }
     }
 
+    /**
+     * 消息的投递次数（XPENDING 的 times_delivered）超过 maxDeliveries 时，转入死信 stream {queueName}:dlq 并确认，
+     * 由人工或补偿任务处理，不再阻塞分区的 pending-list
+     * @return 已经转入死信时返回 true
+     */
+    boolean deadLetterIfExhausted(String queueName, MapRecord<String, Object, Object> record, Exception cause) {
+        try {
+            // 1.查询投递次数 XPENDING stream.orders:0 g1 id id 1
+            PendingMessages pending = stringRedisTemplate.opsForStream().pending(
+                    queueName, GROUP_NAME, Range.closed(record.getId().getValue(), record.getId().getValue()), 1L);
+            if (pending.isEmpty() || pending.get(0).getTotalDeliveryCount() < maxDeliveries) {
+                return false;
+            }
+            // 2.写入死信 stream，保留原始字段和失败原因
+            Map<Object, Object> value = new LinkedHashMap<>(record.getValue());
+            value.put("recordId", record.getId().getValue());
+            value.put("error", String.valueOf(cause));
+            stringRedisTemplate.opsForStream().add(StreamRecords.mapBacked(value).withStreamKey(queueName + ":dlq"));
+            // 3.确认消息，从 pending-list 中移除
+            stringRedisTemplate.opsForStream().acknowledge(queueName, GROUP_NAME, record.getId());
+            log.error("订单消息投递 {} 次仍然失败，转入死信, stream: {}, recordId: {}",
+                    pending.get(0).getTotalDeliveryCount(), queueName, record.getId());
+            return true;
+        } catch (Exception e) {
+            log.error("订单消息转入死信失败, recordId: {}", record.getId(), e);
+            return false;
+        }
+    }
+
+    /**
+     * 批量创建订单：一个事务内批量落库并整批确认；整批失败时降级为逐条处理，失败的消息留在 pending-list 中
+     * @return 所有订单都处理成功时返回 true
+     */
+    boolean handleVoucherOrderBatch(List<MapRecord<String, Object, Object>> records) {
+        // 1.解析数据
+        List<VoucherOrder> voucherOrders = records.stream()
+                .map(record -> BeanUtil.fillBeanWithMap(record.getValue(), new VoucherOrder(), true))
+                .collect(Collectors.toList());
+        try {
+            // 2.一个事务内批量扣库存、批量插入订单
+            proxy.createVoucherOrderBatch(voucherOrders);
+        } catch (Exception e) {
+            // 3.整批失败，降级为逐条处理
+            log.error("批量创建订单失败，降级为逐条处理，size: {}", records.size(), e);
+            return handleOneByOne(records, voucherOrders);
+        }
+        // 4.按分区整批确认消息 XACK
+        records.stream()
+                .collect(Collectors.groupingBy(MapRecord::getStream,
+                        Collectors.mapping(MapRecord::getId, Collectors.toList())))
+                .forEach((streamKey, ids) -> stringRedisTemplate.opsForStream()
+                        .acknowledge(streamKey, GROUP_NAME, ids.toArray(new RecordId[0])));
+        return true;
+    }
+
+    private boolean handleOneByOne(List<MapRecord<String, Object, Object>> records, List<VoucherOrder> voucherOrders) {
+        boolean success = true;
+        for (int i = 0; i < records.size(); i++) {
+            MapRecord<String, Object, Object> record = records.get(i);
+            try {
+                handleVoucherOrder(voucherOrders.get(i));
+                stringRedisTemplate.opsForStream().acknowledge(record.getStream(), GROUP_NAME, record.getId());
+            } catch (Exception e) {
+                log.error("处理订单异常, recordId: {}", record.getId(), e);
+                success = false;
+            }
+        }
+        return success;
+    }
+
+    @Override
+    public Result queryOrderStreamLag() {
+        int partitions = stockShards.getPartitions();
+        List<Map<String, Object>> stats = new ArrayList<>(partitions);
+        for (int p = 0; p < partitions; p++) {
+            String streamKey = stockShards.streamKey(p);
+            Map<String, Object> stat = new LinkedHashMap<>();
+            stat.put("stream", streamKey);
+            stat.put("length", stringRedisTemplate.opsForStream().size(streamKey));
+            // 1.查询消费者组的投递进度和 pending 数 XINFO GROUPS stream.orders:0
+            StreamInfo.XInfoGroup group = null;
+            try {
+                group = stringRedisTemplate.opsForStream().groups(streamKey).stream()
+                        .filter(g -> GROUP_NAME.equals(g.groupName()))
+                        .findFirst().orElse(null);
+            } catch (Exception e) {
+                // stream 还不存在
+                log.debug("查询消费者组失败, stream: {}", streamKey);
+            }
+            if (group == null) {
+                stats.add(stat);
+                continue;
+            }
+            stat.put("consumers", group.consumerCount());
+            stat.put("pending", group.pendingCount());
+            stat.put("lastDeliveredId", group.lastDeliveredId());
+            // 2.未投递的消息数 = lastDeliveredId 之后的消息数，最多统计 1000 条
+            List<MapRecord<String, Object, Object>> undelivered = stringRedisTemplate.opsForStream().range(
+                    streamKey,
+                    Range.rightUnbounded(Range.Bound.inclusive(group.lastDeliveredId())),
+                    RedisZSetCommands.Limit.limit().count(1001)
+            );
+            int lag = undelivered == null ? 0 : undelivered.size();
+            if (lag > 0 && undelivered.get(0).getId().getValue().equals(group.lastDeliveredId())) {
+                lag--;
+            }
+            stat.put("lag", lag);
+            stats.add(stat);
+        }
+        return Result.ok(stats);
+    }
+
 
 //    @Override
 //    public Result secKillVoucher(Long voucherId) {
@@ -261,27 +617,89 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
 
     @Override
     public Result secKillVoucher(Long voucherId) {
+        // 0.本地已标记售罄，直接返回，不访问 Redis
+        if (soldOutRegistry.isSoldOut(voucherId)) {
+            return Result.fail("库存不足");
+        }
         //获取用户
         Long userId = UserHolder.getUser().getId();
         long orderId = redisIdWorker.nextId("order");
-        // 1.执行lua脚本
-        Long result = stringRedisTemplate.execute(
-                SECKILL_SCRIPT,
-                Collections.emptyList(),
-                voucherId.toString(), userId.toString(), String.valueOf(orderId)
-        );
+        // 1.执行lua脚本，未分片的秒杀券写入券所在的分区，分片的写入用户所在分片对应的分区
+        int shards = stockShards.shardsOf(voucherId);
+        Long result = shards <= 1
+                ? stringRedisTemplate.execute(
+                        SECKILL_SCRIPT,
+                        Arrays.asList(stockShards.stockKey(voucherId), stockShards.orderKey(voucherId),
+                                stockShards.voucherStreamKey(voucherId)),
+                        voucherId.toString(), userId.toString(), String.valueOf(orderId))
+                : secKillSharded(voucherId, userId, orderId, shards);
         int r = result.intValue();
         // 2.判断结果是否为0
         if (r != 0) {
             // 2.1.不为0 ，代表没有购买资格
-            return Result.fail(r == 1 ? "库存不足" : "不能重复下单");
+            if (r == 1) {
+                // 2.2.库存不足，标记售罄并通知其它实例
+                soldOutRegistry.markSoldOut(voucherId);
+                return Result.fail("库存不足");
+            }
+            return Result.fail("不能重复下单");
         }
 
-        //3.获取代理对象
-        proxy = (IVoucherOrderService) AopContext.currentProxy();
-        //4.返回订单id
+        //3.返回订单id
         return Result.ok(orderId);
     }
+    /**
+     * 分片库存下单：同一个 slot 内的分片（分片号对 partitions 同余）在一个脚本里依次扣减、去重、发消息，
+     * 只有这些分片都没有库存时，才到其它 slot 的兄弟分片预扣，再回到用户所在分片去重、发消息
+     */
+    private Long secKillSharded(Long voucherId, Long userId, long orderId, int shards) {
+        int home = stockShards.homeShard(userId, shards);
+        int partitions = stockShards.getPartitions();
+        List<String> keys = new ArrayList<>();
+        keys.add(stockShards.orderKey(voucherId, home));
+        keys.add(stockShards.orderStreamKey(userId));
+        List<String> otherSlots = new ArrayList<>();
+        for (int i = 0; i < shards; i++) {
+            int shard = (home + i) % shards;
+            if ((shard - home) % partitions == 0) {
+                keys.add(stockShards.stockKey(voucherId, shard));
+            } else {
+                otherSlots.add(stockShards.stockKey(voucherId, shard));
+            }
+        }
+        // 1.原子地扣同一个 slot 内分片的库存
+        Long result = stringRedisTemplate.execute(SECKILL_SHARD_SCRIPT, keys,
+                voucherId.toString(), userId.toString(), String.valueOf(orderId), "0");
+        if (result == null || result != 1) {
+            return result;
+        }
+        // 2.同一个 slot 内都没有库存，依次到其它 slot 的兄弟分片预扣
+        List<String> orderKeys = keys.subList(0, 2);
+        for (String siblingKey : otherSlots) {
+            Long reserved = stringRedisTemplate.execute(SECKILL_RESERVE_SCRIPT, Collections.singletonList(siblingKey));
+            if (reserved == null || reserved != 1) {
+                continue;
+            }
+            // 3.预扣成功，回到用户所在分片去重并发送消息，重复下单时归还预扣的库存
+            try {
+                result = stringRedisTemplate.execute(SECKILL_SHARD_SCRIPT, orderKeys,
+                        voucherId.toString(), userId.toString(), String.valueOf(orderId), "1");
+            } catch (RuntimeException e) {
+                // 调用失败（例如超时）时脚本可能已经执行，第 1 步时用户还没有下单，现在仍不在下单集合中才归还
+                if (!Boolean.TRUE.equals(stringRedisTemplate.opsForSet().isMember(orderKeys.get(0), userId.toString()))) {
+                    stringRedisTemplate.opsForValue().increment(siblingKey);
+                }
+                throw e;
+            }
+            if (result == null || result != 0) {
+                stringRedisTemplate.opsForValue().increment(siblingKey);
+            }
+            return result;
+        }
+        // 4.所有分片都没有库存
+        return 1L;
+    }
+
     @Transactional //注意事务，事务提交以后才能释放锁
     public Result createVoucherOrder(Long voucherId) {
         //一人一单
@@ -342,4 +760,45 @@ public class VoucherOrderServiceImpl extends ServiceImpl<VoucherOrderMapper, Vou
 
     }
 
+    @Override
+    @Transactional
+    public void createVoucherOrderBatch(List<VoucherOrder> voucherOrders) {
+        // 1.批内去重，同一用户同一优惠券只保留一条
+        Map<String, VoucherOrder> orderMap = new LinkedHashMap<>();
+        for (VoucherOrder voucherOrder : voucherOrders) {
+            orderMap.putIfAbsent(voucherOrder.getUserId() + ":" + voucherOrder.getVoucherId(), voucherOrder);
+        }
+        // 2.一次查询过滤掉已经落库的订单（一人一单）
+        Set<Long> userIds = orderMap.values().stream().map(VoucherOrder::getUserId).collect(Collectors.toSet());
+        Set<Long> voucherIds = orderMap.values().stream().map(VoucherOrder::getVoucherId).collect(Collectors.toSet());
+        List<VoucherOrder> existed = query()
+                .select("user_id", "voucher_id")
+                .in("user_id", userIds)
+                .in("voucher_id", voucherIds)
+                .list();
+        for (VoucherOrder voucherOrder : existed) {
+            if (orderMap.remove(voucherOrder.getUserId() + ":" + voucherOrder.getVoucherId()) != null) {
+                log.error("用户已经购买过了, userId: {}", voucherOrder.getUserId());
+            }
+        }
+        if (orderMap.isEmpty()) {
+            return;
+        }
+        // 3.按优惠券聚合扣减库存，每个优惠券只执行一条 UPDATE
+        Map<Long, Long> stockMap = orderMap.values().stream()
+                .collect(Collectors.groupingBy(VoucherOrder::getVoucherId, Collectors.counting()));
+        for (Map.Entry<Long, Long> entry : stockMap.entrySet()) {
+            boolean success = seckillVoucherService.update()
+                    .setSql("stock = stock - " + entry.getValue()) // set stock = stock - n
+                    .eq("voucher_id", entry.getKey()).ge("stock", entry.getValue()) // where id = ? and stock >= n
+                    .update();
+            if (!success) {
+                // 库存不足，整批回滚，由调用方逐条处理
+                throw new IllegalStateException("库存不足, voucherId: " + entry.getKey());
+            }
+        }
+        // 4.JDBC 批量插入订单
+        saveBatch(orderMap.values(), orderMap.size());
+    }
+
 }
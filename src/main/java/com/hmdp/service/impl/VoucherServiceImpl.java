@@ -7,13 +7,20 @@ import com.hmdp.mapper.VoucherMapper;
 import com.hmdp.entity.SeckillVoucher;
 import com.hmdp.service.ISeckillVoucherService;
 import com.hmdp.service.IVoucherService;
+import com.hmdp.utils.CacheClient;
+import com.hmdp.utils.CacheStrategy;
 import com.hmdp.utils.RedisConstants;
-import org.springframework.data.redis.core.StringRedisTemplate;
+import com.hmdp.utils.SeckillSoldOutRegistry;
+import com.hmdp.utils.SeckillStockShards;
+import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import javax.annotation.Resource;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 /**
  * <p>
@@ -23,22 +30,37 @@ import java.util.List;
  * @author 虎哥
  * @since 2021-12-22
  */
+@Slf4j
 @Service
 public class VoucherServiceImpl extends ServiceImpl<VoucherMapper, Voucher> implements IVoucherService {
 
     @Resource
     private ISeckillVoucherService seckillVoucherService;
     @Resource
-    private StringRedisTemplate stringRedisTemplate;
+    private SeckillSoldOutRegistry soldOutRegistry;
+    @Resource
+    private SeckillStockShards stockShards;
+    @Resource
+    private CacheClient cacheClient;
 
     @Override
     public Result queryVoucherOfShop(Long shopId) {
-        // 查询优惠券信息
-        List<Voucher> vouchers = getBaseMapper().queryVoucherOfShop(shopId);
+        // 查询优惠券信息，列表里的库存只用于展示，短时间的不一致可以接受
+        List<Voucher> vouchers = cacheClient.getList(RedisConstants.CACHE_VOUCHER_LIST_KEY, shopId, Voucher.class,
+                getBaseMapper()::queryVoucherOfShop, RedisConstants.CACHE_VOUCHER_LIST_TTL, TimeUnit.MINUTES,
+                CacheStrategy.MUTEX);
         // 返回结果
         return Result.ok(vouchers);
     }
 
+    @Override
+    public boolean save(Voucher voucher) {
+        // 新增普通券和秒杀券都会走这里，保存后删除店铺的优惠券列表缓存
+        boolean success = super.save(voucher);
+        cacheClient.delete(RedisConstants.CACHE_VOUCHER_LIST_KEY + voucher.getShopId());
+        return success;
+    }
+
     @Override
     @Transactional
     public void addSeckillVoucher(Voucher voucher) {
@@ -51,8 +73,45 @@ public class VoucherServiceImpl extends ServiceImpl<VoucherMapper, Voucher> impl
         seckillVoucher.setBeginTime(voucher.getBeginTime());
         seckillVoucher.setEndTime(voucher.getEndTime());
         seckillVoucherService.save(seckillVoucher);
-        //保存秒杀优惠券到 redis 中
-        stringRedisTemplate.opsForValue().set(RedisConstants.SECKILL_STOCK_KEY +voucher.getId(),voucher.getStock().toString());
+        //保存秒杀优惠券到 redis 中，库存足够大时拆分到多个分片
+        stockShards.initStock(voucher.getId(), voucher.getStock());
 
     }
+
+    @Override
+    @Transactional
+    public Result addSeckillStock(Long voucherId, Integer stock) {
+        if (stock == null || stock <= 0) {
+            return Result.fail("补货数量必须大于0");
+        }
+        // 1.数据库加库存
+        boolean success = seckillVoucherService.update()
+                .setSql("stock = stock + " + stock)
+                .eq("voucher_id", voucherId)
+                .update();
+        if (!success) {
+            return Result.fail("秒杀券不存在");
+        }
+        Voucher voucher = getById(voucherId);
+        // 2.事务提交后再修改 Redis，事务回滚时 Redis 的库存不能多出来，否则会超卖
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCommit() {
+                try {
+                    // 2.1.redis 加库存
+                    stockShards.addStock(voucherId, stock);
+                    // 2.2.清除所有实例的售罄标记
+                    soldOutRegistry.reset(voucherId);
+                    // 2.3.删除店铺的优惠券列表缓存
+                    if (voucher != null) {
+                        cacheClient.delete(RedisConstants.CACHE_VOUCHER_LIST_KEY + voucher.getShopId());
+                    }
+                } catch (Exception e) {
+                    // 数据库库存多于 Redis 只会少卖，记录下来人工补齐
+                    log.error("补货已提交，同步 Redis 库存失败, voucherId: {}, stock: {}", voucherId, stock, e);
+                }
+            }
+        });
+        return Result.ok();
+    }
 }
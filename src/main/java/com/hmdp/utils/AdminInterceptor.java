@@ -0,0 +1,48 @@
+package com.hmdp.utils;
+
+import com.hmdp.dto.UserDTO;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * 管理接口拦截器：只有配置在 hmdp.admin.user-ids 中的用户可以访问，未配置时所有用户都不能访问
+ */
+public class AdminInterceptor implements HandlerInterceptor {
+
+    private final Set<Long> adminUserIds;
+    /**
+     * 需要检查的请求方法，为空时检查所有方法
+     */
+    private final Set<String> methods;
+
+    public AdminInterceptor(Set<Long> adminUserIds) {
+        this(adminUserIds, Collections.emptySet());
+    }
+
+    public AdminInterceptor(Set<Long> adminUserIds, Set<String> methods) {
+        this.adminUserIds = adminUserIds;
+        this.methods = methods;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws Exception {
+        if (!methods.isEmpty() && !methods.contains(request.getMethod())) {
+            return true;
+        }
+        // 用户信息由 RefreshTokenInterceptor 放入 threadlocal
+        UserDTO user = UserHolder.getUser();
+        if (user == null) {
+            response.setStatus(401); //401 未授权
+            return false;
+        }
+        if (!adminUserIds.contains(user.getId())) {
+            response.setStatus(403); //403 没有权限
+            return false;
+        }
+        return true;
+    }
+}
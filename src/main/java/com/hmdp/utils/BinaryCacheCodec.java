@@ -0,0 +1,555 @@
+package com.hmdp.utils;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 紧凑的二进制格式，按类结构（schema）依次写字段值，不写字段名。
+ * <pre>
+ * magic(2) version(1) flags(1) [expireTime] [列表长度] [schema 指纹(4)] 值...
+ * </pre>
+ * 每个对象先写一个非空字段的位图，整数使用 zigzag 变长编码，时间写成秒 + 纳秒。
+ * 字段按名称排序，类的字段名或类型变化后指纹不一致，旧数据当作未命中，不会解析出错误的值。
+ * 支持基本类型及包装类、String、BigDecimal、LocalDate、LocalDateTime、List 和嵌套的实体类，不支持循环引用。
+ * 不支持的类型交给 fallback 编码，失败结果同样缓存在 schema 表中，不会每次都重新反射
+ */
+public class BinaryCacheCodec implements CacheCodec {
+
+    public static final String NAME = "binary";
+
+    private static final byte MAGIC_0 = (byte) 0xCA;
+    private static final byte MAGIC_1 = (byte) 0xCE;
+    private static final byte VERSION = 1;
+
+    private static final int FLAG_EXPIRE = 1;
+    private static final int FLAG_LIST = 1 << 1;
+
+    private final ConcurrentHashMap<Class<?>, Schema> schemas = new ConcurrentHashMap<>();
+
+    private final CacheCodec fallback;
+
+    /**
+     * @param fallback 类型不支持二进制格式时使用的编解码器
+     */
+    public BinaryCacheCodec(CacheCodec fallback) {
+        this.fallback = fallback;
+    }
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public boolean accepts(byte[] bytes) {
+        return bytes.length > 2 && bytes[0] == MAGIC_0 && bytes[1] == MAGIC_1;
+    }
+
+    @Override
+    public byte[] encode(RedisData redisData) {
+        Object data = redisData.getData();
+        boolean list = data instanceof List;
+        Schema schema = null;
+        if (!list || !((List<?>) data).isEmpty()) {
+            schema = schemaOf((list ? ((List<?>) data).get(0) : data).getClass());
+            if (schema.unsupported != null) {
+                return fallback.encode(redisData);
+            }
+        }
+        Output out = new Output(128);
+        out.writeByte(MAGIC_0);
+        out.writeByte(MAGIC_1);
+        out.writeByte(VERSION);
+        out.writeByte((redisData.getExpireTime() != null ? FLAG_EXPIRE : 0) | (list ? FLAG_LIST : 0));
+        if (redisData.getExpireTime() != null) {
+            writeDateTime(out, redisData.getExpireTime());
+        }
+        if (!list) {
+            out.writeInt(schema.fingerprint);
+            writeBean(out, schema, data);
+            return out.toByteArray();
+        }
+        List<?> values = (List<?>) data;
+        out.writeVarInt(values.size());
+        if (values.isEmpty()) {
+            return out.toByteArray();
+        }
+        out.writeInt(schema.fingerprint);
+        for (Object value : values) {
+            writeBean(out, schema, value);
+        }
+        return out.toByteArray();
+    }
+
+    @Override
+    public RedisData decode(byte[] bytes, Class<?> type, boolean list) {
+        Input in = new Input(bytes, 2);
+        if (in.readByte() != VERSION) {
+            return null;
+        }
+        int flags = in.readByte();
+        if (((flags & FLAG_LIST) != 0) != list) {
+            return null;
+        }
+        RedisData redisData = new RedisData();
+        if ((flags & FLAG_EXPIRE) != 0) {
+            redisData.setExpireTime(readDateTime(in));
+        }
+        Schema schema = schemaOf(type);
+        if (schema.unsupported != null) {
+            return null;
+        }
+        if (!list) {
+            if (in.readInt() != schema.fingerprint) {
+                return null;
+            }
+            redisData.setData(readBean(in, schema));
+            return redisData;
+        }
+        int size = in.readVarInt();
+        List<Object> values = new ArrayList<>(size);
+        if (size > 0 && in.readInt() != schema.fingerprint) {
+            return null;
+        }
+        for (int i = 0; i < size; i++) {
+            values.add(readBean(in, schema));
+        }
+        redisData.setData(values);
+        return redisData;
+    }
+
+    private Schema schemaOf(Class<?> type) {
+        // 不用 computeIfAbsent，嵌套的实体类会递归创建 schema
+        Schema schema = schemas.get(type);
+        if (schema == null) {
+            try {
+                schema = new Schema(type);
+            } catch (IllegalArgumentException e) {
+                schema = new Schema(type, e.getMessage());
+            }
+            Schema old = schemas.putIfAbsent(type, schema);
+            if (old != null) {
+                schema = old;
+            }
+        }
+        return schema;
+    }
+
+    private void writeBean(Output out, Schema schema, Object bean) {
+        FieldInfo[] fields = schema.fields;
+        Object[] values = new Object[fields.length];
+        byte[] bitmap = new byte[(fields.length + 7) >>> 3];
+        for (int i = 0; i < fields.length; i++) {
+            values[i] = fields[i].get(bean);
+            if (values[i] != null) {
+                bitmap[i >>> 3] |= 1 << (i & 7);
+            }
+        }
+        out.writeBytes(bitmap);
+        for (int i = 0; i < fields.length; i++) {
+            if (values[i] != null) {
+                writeValue(out, fields[i].kind, fields[i].elementType, values[i]);
+            }
+        }
+    }
+
+    private Object readBean(Input in, Schema schema) {
+        FieldInfo[] fields = schema.fields;
+        byte[] bitmap = in.readBytes((fields.length + 7) >>> 3);
+        Object bean = schema.newInstance();
+        for (int i = 0; i < fields.length; i++) {
+            if ((bitmap[i >>> 3] & (1 << (i & 7))) != 0) {
+                fields[i].set(bean, readValue(in, fields[i].kind, fields[i].elementType));
+            }
+        }
+        return bean;
+    }
+
+    private void writeValue(Output out, Kind kind, Class<?> type, Object value) {
+        switch (kind) {
+            case LONG:
+                out.writeVarLong(zigzag(((Number) value).longValue()));
+                break;
+            case INT:
+            case SHORT:
+            case BYTE:
+                out.writeVarLong(zigzag(((Number) value).intValue()));
+                break;
+            case BOOLEAN:
+                out.writeByte((Boolean) value ? 1 : 0);
+                break;
+            case DOUBLE:
+                out.writeLong(Double.doubleToRawLongBits((Double) value));
+                break;
+            case FLOAT:
+                out.writeInt(Float.floatToRawIntBits((Float) value));
+                break;
+            case STRING:
+                out.writeString((String) value);
+                break;
+            case BIG_DECIMAL:
+                out.writeString(value.toString());
+                break;
+            case DATE:
+                out.writeVarLong(zigzag(((LocalDate) value).toEpochDay()));
+                break;
+            case DATE_TIME:
+                writeDateTime(out, (LocalDateTime) value);
+                break;
+            case LIST:
+                List<?> list = (List<?>) value;
+                Kind elementKind = kindOf(type);
+                out.writeVarInt(list.size());
+                for (Object element : list) {
+                    out.writeByte(element == null ? 0 : 1);
+                    if (element != null) {
+                        writeValue(out, elementKind, type, element);
+                    }
+                }
+                break;
+            default:
+                writeBean(out, schemaOf(type), value);
+        }
+    }
+
+    private Object readValue(Input in, Kind kind, Class<?> type) {
+        switch (kind) {
+            case LONG:
+                return unzigzag(in.readVarLong());
+            case INT:
+                return (int) unzigzag(in.readVarLong());
+            case SHORT:
+                return (short) unzigzag(in.readVarLong());
+            case BYTE:
+                return (byte) unzigzag(in.readVarLong());
+            case BOOLEAN:
+                return in.readByte() != 0;
+            case DOUBLE:
+                return Double.longBitsToDouble(in.readLong());
+            case FLOAT:
+                return Float.intBitsToFloat(in.readInt());
+            case STRING:
+                return in.readString();
+            case BIG_DECIMAL:
+                return new BigDecimal(in.readString());
+            case DATE:
+                return LocalDate.ofEpochDay(unzigzag(in.readVarLong()));
+            case DATE_TIME:
+                return readDateTime(in);
+            case LIST:
+                int size = in.readVarInt();
+                Kind elementKind = kindOf(type);
+                List<Object> list = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) {
+                    list.add(in.readByte() == 0 ? null : readValue(in, elementKind, type));
+                }
+                return list;
+            default:
+                return readBean(in, schemaOf(type));
+        }
+    }
+
+    private static void writeDateTime(Output out, LocalDateTime time) {
+        out.writeVarLong(zigzag(time.toEpochSecond(ZoneOffset.UTC)));
+        out.writeVarInt(time.getNano());
+    }
+
+    private static LocalDateTime readDateTime(Input in) {
+        long seconds = unzigzag(in.readVarLong());
+        return LocalDateTime.ofEpochSecond(seconds, in.readVarInt(), ZoneOffset.UTC);
+    }
+
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private enum Kind {
+        LONG, INT, SHORT, BYTE, BOOLEAN, DOUBLE, FLOAT, STRING, BIG_DECIMAL, DATE, DATE_TIME, LIST, BEAN
+    }
+
+    private static Kind kindOf(Class<?> type) {
+        if (type == Long.class || type == long.class) {
+            return Kind.LONG;
+        }
+        if (type == Integer.class || type == int.class) {
+            return Kind.INT;
+        }
+        if (type == Short.class || type == short.class) {
+            return Kind.SHORT;
+        }
+        if (type == Byte.class || type == byte.class) {
+            return Kind.BYTE;
+        }
+        if (type == Boolean.class || type == boolean.class) {
+            return Kind.BOOLEAN;
+        }
+        if (type == Double.class || type == double.class) {
+            return Kind.DOUBLE;
+        }
+        if (type == Float.class || type == float.class) {
+            return Kind.FLOAT;
+        }
+        if (type == String.class) {
+            return Kind.STRING;
+        }
+        if (type == BigDecimal.class) {
+            return Kind.BIG_DECIMAL;
+        }
+        if (type == LocalDate.class) {
+            return Kind.DATE;
+        }
+        if (type == LocalDateTime.class) {
+            return Kind.DATE_TIME;
+        }
+        if (type == List.class) {
+            return Kind.LIST;
+        }
+        if (type.isPrimitive() || type.isArray() || type.isEnum() || type.getName().startsWith("java.")) {
+            throw new IllegalArgumentException("不支持的字段类型: " + type.getName());
+        }
+        return Kind.BEAN;
+    }
+
+    /**
+     * 一个类的字段列表，按字段名排序
+     */
+    private final class Schema {
+        private final Constructor<?> constructor;
+        private final FieldInfo[] fields;
+        private final int fingerprint;
+        /**
+         * 不支持二进制格式的原因，为 null 表示支持
+         */
+        private final String unsupported;
+
+        /**
+         * 不支持的类型，只记录原因
+         */
+        Schema(Class<?> type, String unsupported) {
+            this.constructor = null;
+            this.fields = new FieldInfo[0];
+            this.fingerprint = type.getName().hashCode();
+            this.unsupported = unsupported;
+        }
+
+        Schema(Class<?> type) {
+            unsupported = null;
+            try {
+                constructor = type.getDeclaredConstructor();
+                constructor.setAccessible(true);
+            } catch (NoSuchMethodException e) {
+                throw new IllegalArgumentException("缺少无参构造函数: " + type.getName(), e);
+            }
+            List<FieldInfo> list = new ArrayList<>();
+            for (Class<?> c = type; c != Object.class; c = c.getSuperclass()) {
+                for (Field field : c.getDeclaredFields()) {
+                    int modifiers = field.getModifiers();
+                    if (!Modifier.isStatic(modifiers) && !Modifier.isTransient(modifiers)) {
+                        list.add(new FieldInfo(field));
+                    }
+                }
+            }
+            fields = list.toArray(new FieldInfo[0]);
+            Arrays.sort(fields, Comparator.comparing(f -> f.field.getName()));
+            // 指纹包含字段名、字段类型，以及嵌套实体类的指纹
+            StringBuilder signature = new StringBuilder(type.getName());
+            for (FieldInfo f : fields) {
+                signature.append(';').append(f.field.getName()).append(':').append(f.field.getType().getName());
+                Class<?> nested = f.kind == Kind.BEAN ? f.field.getType() : f.elementType;
+                if (nested != null && kindOf(nested) == Kind.BEAN) {
+                    Schema nestedSchema = schemaOf(nested);
+                    if (nestedSchema.unsupported != null) {
+                        throw new IllegalArgumentException(nestedSchema.unsupported);
+                    }
+                    signature.append('<').append(nestedSchema.fingerprint).append('>');
+                } else if (nested != null) {
+                    signature.append('<').append(nested.getName()).append('>');
+                }
+            }
+            fingerprint = signature.toString().hashCode();
+        }
+
+        Object newInstance() {
+            try {
+                return constructor.newInstance();
+            } catch (ReflectiveOperationException e) {
+                throw new IllegalStateException("创建对象失败: " + constructor.getDeclaringClass().getName(), e);
+            }
+        }
+    }
+
+    private static final class FieldInfo {
+        private final Field field;
+        private final Kind kind;
+        /**
+         * List 字段的元素类型
+         */
+        private final Class<?> elementType;
+
+        FieldInfo(Field field) {
+            field.setAccessible(true);
+            this.field = field;
+            this.kind = kindOf(field.getType());
+            if (kind == Kind.LIST) {
+                Type generic = field.getGenericType();
+                if (!(generic instanceof ParameterizedType)
+                        || !(((ParameterizedType) generic).getActualTypeArguments()[0] instanceof Class)) {
+                    throw new IllegalArgumentException("List 字段必须指定元素类型: " + field);
+                }
+                Class<?> element = (Class<?>) ((ParameterizedType) generic).getActualTypeArguments()[0];
+                if (kindOf(element) == Kind.LIST) {
+                    throw new IllegalArgumentException("不支持嵌套的 List: " + field);
+                }
+                this.elementType = element;
+            } else {
+                this.elementType = kind == Kind.BEAN ? field.getType() : null;
+            }
+        }
+
+        Object get(Object bean) {
+            try {
+                return field.get(bean);
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        void set(Object bean, Object value) {
+            try {
+                field.set(bean, value);
+            } catch (IllegalAccessException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+
+    private static final class Output {
+        private byte[] buf;
+        private int pos;
+
+        Output(int capacity) {
+            buf = new byte[capacity];
+        }
+
+        private void ensure(int n) {
+            if (pos + n > buf.length) {
+                buf = Arrays.copyOf(buf, Math.max(buf.length << 1, pos + n));
+            }
+        }
+
+        void writeByte(int b) {
+            ensure(1);
+            buf[pos++] = (byte) b;
+        }
+
+        void writeBytes(byte[] bytes) {
+            ensure(bytes.length);
+            System.arraycopy(bytes, 0, buf, pos, bytes.length);
+            pos += bytes.length;
+        }
+
+        void writeInt(int v) {
+            ensure(4);
+            buf[pos++] = (byte) (v >>> 24);
+            buf[pos++] = (byte) (v >>> 16);
+            buf[pos++] = (byte) (v >>> 8);
+            buf[pos++] = (byte) v;
+        }
+
+        void writeLong(long v) {
+            writeInt((int) (v >>> 32));
+            writeInt((int) v);
+        }
+
+        void writeVarInt(int v) {
+            writeVarLong(v & 0xFFFFFFFFL);
+        }
+
+        void writeVarLong(long v) {
+            ensure(10);
+            while ((v & ~0x7FL) != 0) {
+                buf[pos++] = (byte) ((v & 0x7F) | 0x80);
+                v >>>= 7;
+            }
+            buf[pos++] = (byte) v;
+        }
+
+        void writeString(String s) {
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            writeVarInt(bytes.length);
+            writeBytes(bytes);
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(buf, pos);
+        }
+    }
+
+    private static final class Input {
+        private final byte[] buf;
+        private int pos;
+
+        Input(byte[] buf, int pos) {
+            this.buf = buf;
+            this.pos = pos;
+        }
+
+        int readByte() {
+            return buf[pos++];
+        }
+
+        byte[] readBytes(int n) {
+            byte[] bytes = Arrays.copyOfRange(buf, pos, pos + n);
+            pos += n;
+            return bytes;
+        }
+
+        int readInt() {
+            return (buf[pos++] & 0xFF) << 24 | (buf[pos++] & 0xFF) << 16 | (buf[pos++] & 0xFF) << 8 | (buf[pos++] & 0xFF);
+        }
+
+        long readLong() {
+            return ((long) readInt() << 32) | (readInt() & 0xFFFFFFFFL);
+        }
+
+        int readVarInt() {
+            return (int) readVarLong();
+        }
+
+        long readVarLong() {
+            long result = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                byte b = buf[pos++];
+                result |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return result;
+                }
+            }
+            throw new IllegalArgumentException("变长整数格式错误");
+        }
+
+        String readString() {
+            int length = readVarInt();
+            String s = new String(buf, pos, length, StandardCharsets.UTF_8);
+            pos += length;
+            return s;
+        }
+    }
+}
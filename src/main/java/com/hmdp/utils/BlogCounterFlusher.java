@@ -0,0 +1,184 @@
+package com.hmdp.utils;
+
+import com.hmdp.mapper.BlogMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RLock;
+import org.redisson.api.RedissonClient;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * 笔记计数（点赞数、评论数）的 write-behind 刷写。
+ * <p>
+ * 计数的变化只写入 Redis 的增量 hash：blog:counter:delta:{column}，field 是笔记id，value 是增量。
+ * 定时任务把增量 hash RENAME 成 {key}:flushing（之后的变化写入新的增量 hash），
+ * 再分批用一条 CASE WHEN 的 UPDATE 累加到 tb_blog，每批成功后从 flushing 中删除对应的 field，全部完成后删除 flushing。
+ * <p>
+ * 崩溃恢复：下次刷写时如果 flushing 还存在，先把它刷完再处理新的增量，所以增量不会丢失；
+ * 如果恰好在某一批 UPDATE 提交后、HDEL 之前崩溃，这一批会被重复累加一次（at-least-once）。
+ * 多个实例通过分布式锁保证同一时间只有一个在刷写。
+ * <p>
+ * 读取计数时需要加上 {@link #pendingDeltas} 返回的、还没有刷写到数据库的增量
+ */
+@Slf4j
+@Component
+public class BlogCounterFlusher {
+
+    public static final String LIKED = "liked";
+    public static final String COMMENTS = "comments";
+
+    private static final String[] COLUMNS = {LIKED, COMMENTS};
+    private static final String FLUSHING_SUFFIX = ":flushing";
+    /**
+     * 刷写使用的锁，构建热门排行期间也会持有，保证数据库计数和增量不会在读取过程中变化
+     */
+    static final String LOCK_KEY = "lock:blog:counter:flush";
+
+    /**
+     * 每条 UPDATE 最多包含的笔记数
+     */
+    @Value("${hmdp.blog.counter.batch-size:500}")
+    private int batchSize;
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final RedissonClient redissonClient;
+    private final BlogMapper blogMapper;
+    private final CacheClient cacheClient;
+
+    public BlogCounterFlusher(StringRedisTemplate stringRedisTemplate, RedissonClient redissonClient,
+                              BlogMapper blogMapper, CacheClient cacheClient) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.redissonClient = redissonClient;
+        this.blogMapper = blogMapper;
+        this.cacheClient = cacheClient;
+    }
+
+    public static String deltaKey(String column) {
+        return RedisConstants.BLOG_COUNTER_DELTA_KEY + column;
+    }
+
+    /**
+     * 正在刷写的增量
+     */
+    static String flushingKey(String column) {
+        return deltaKey(column) + FLUSHING_SUFFIX;
+    }
+
+    @Scheduled(fixedDelayString = "${hmdp.blog.counter.flush-ms:1000}")
+    public void flush() {
+        RLock lock = redissonClient.getLock(LOCK_KEY);
+        if (!lock.tryLock()) {
+            // 其它实例正在刷写
+            return;
+        }
+        try {
+            for (String column : COLUMNS) {
+                flush(column);
+            }
+        } catch (Exception e) {
+            log.error("刷写笔记计数失败，下次继续", e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void flush(String column) {
+        String deltaKey = deltaKey(column);
+        String flushingKey = flushingKey(column);
+        // 1.上次中断的刷写优先处理，否则把当前增量切换出来
+        if (!Boolean.TRUE.equals(stringRedisTemplate.hasKey(flushingKey))) {
+            if (!Boolean.TRUE.equals(stringRedisTemplate.hasKey(deltaKey))) {
+                return;
+            }
+            stringRedisTemplate.rename(deltaKey, flushingKey);
+        }
+        // 2.分批累加到数据库
+        Map<Object, Object> entries = stringRedisTemplate.opsForHash().entries(flushingKey);
+        Map<Long, Long> batch = new LinkedHashMap<>();
+        List<Object> fields = new ArrayList<>();
+        long total = 0;
+        for (Map.Entry<Object, Object> entry : entries.entrySet()) {
+            fields.add(entry.getKey());
+            long delta = Long.parseLong(entry.getValue().toString());
+            if (delta != 0) {
+                batch.put(Long.valueOf(entry.getKey().toString()), delta);
+            }
+            if (fields.size() == batchSize) {
+                total += flushBatch(column, flushingKey, batch, fields);
+            }
+        }
+        total += flushBatch(column, flushingKey, batch, fields);
+        // 3.全部完成
+        stringRedisTemplate.delete(flushingKey);
+        log.debug("刷写笔记计数 {} 完成, 笔记数: {}", column, total);
+    }
+
+    private int flushBatch(String column, String flushingKey, Map<Long, Long> batch, List<Object> fields) {
+        int size = batch.size();
+        if (!batch.isEmpty()) {
+            blogMapper.incrCounter(column, batch);
+        }
+        if (!fields.isEmpty()) {
+            stringRedisTemplate.opsForHash().delete(flushingKey, fields.toArray());
+        }
+        if (!batch.isEmpty()) {
+            // 缓存的笔记中的计数已经过时，增量删除后再删除缓存，重新加载的计数不会和增量重复
+            cacheClient.delete(batch.keySet().stream()
+                    .map(id -> RedisConstants.CACHE_BLOG_KEY + id)
+                    .collect(Collectors.toList()));
+        }
+        batch.clear();
+        fields.clear();
+        return size;
+    }
+
+    /**
+     * 查询所有计数还没有刷写到数据库的增量，包括正在刷写的部分，一次 pipeline 完成
+     * @return 计数列名 -> (笔记id -> 增量)，没有增量的笔记不放入结果
+     */
+    public Map<String, Map<Long, Long>> pendingDeltas(Collection<Long> blogIds) {
+        Map<String, Map<Long, Long>> result = new HashMap<>();
+        for (String column : COLUMNS) {
+            result.put(column, new HashMap<>());
+        }
+        if (blogIds.isEmpty()) {
+            return result;
+        }
+        byte[][] fields = blogIds.stream()
+                .map(id -> id.toString().getBytes(StandardCharsets.UTF_8))
+                .toArray(byte[][]::new);
+        List<Object> values = stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (String column : COLUMNS) {
+                String deltaKey = deltaKey(column);
+                connection.hMGet(deltaKey.getBytes(StandardCharsets.UTF_8), fields);
+                connection.hMGet(flushingKey(column).getBytes(StandardCharsets.UTF_8), fields);
+            }
+            return null;
+        });
+        List<Long> ids = new ArrayList<>(blogIds);
+        for (int c = 0; c < values.size(); c++) {
+            // 每个计数对应增量 hash 和 flushing 两个结果
+            Map<Long, Long> columnDeltas = result.get(COLUMNS[c / 2]);
+            List<?> deltas = (List<?>) values.get(c);
+            for (int i = 0; i < ids.size(); i++) {
+                Object delta = deltas.get(i);
+                if (delta != null) {
+                    columnDeltas.merge(ids.get(i), Long.parseLong(delta.toString()), Long::sum);
+                }
+            }
+        }
+        return result;
+    }
+}
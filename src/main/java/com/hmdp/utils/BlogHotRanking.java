@@ -0,0 +1,380 @@
+package com.hmdp.utils;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.hmdp.entity.Blog;
+import com.hmdp.mapper.BlogMapper;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RLock;
+import org.redisson.api.RedissonClient;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * 热门笔记排行：ZSET blog:hot，member 是笔记id，score 是按时间衰减的热度。
+ * <p>
+ * 点赞、评论、发布时增加热度，权重乘以 2 ^ ((t - epoch) / halfLife)，越新的行为分数越高，
+ * 相当于每过一个半衰期旧的热度减半（forward decay），增加热度只需要一次 ZINCRBY。
+ * 分数随时间指数增长，定时任务用 ZUNIONSTORE WEIGHTS 把所有分数统一衰减、推进 epoch，并只保留前 max-size 篇。
+ * <p>
+ * 构建完成标记 blog:hot:built 不存在时，在后台按 tb_blog 的点赞数、评论数（加上还没有刷写的增量）和发布时间
+ * 构建到临时 ZSET blog:hot:building，构建期间的点赞、评论同时累加到临时 ZSET，完成后 RENAME 覆盖正式排行。
+ * 构建完成前 {@link #isReady()} 返回 false，调用方应退回数据库查询。
+ * 不能用 ZSET 是否存在判断，构建之前的点赞、评论也会通过 ZINCRBY 创建 ZSET
+ */
+@Slf4j
+@Component
+public class BlogHotRanking implements ApplicationRunner {
+
+    private static final DefaultRedisScript<Long> INCR_SCRIPT;
+    private static final DefaultRedisScript<Long> REBASE_SCRIPT;
+    private static final DefaultRedisScript<Long> BUILD_SCRIPT;
+
+    static {
+        INCR_SCRIPT = new DefaultRedisScript<>();
+        INCR_SCRIPT.setLocation(new ClassPathResource("blog_hot_incr.lua"));
+        INCR_SCRIPT.setResultType(Long.class);
+
+        REBASE_SCRIPT = new DefaultRedisScript<>();
+        REBASE_SCRIPT.setLocation(new ClassPathResource("blog_hot_rebase.lua"));
+        REBASE_SCRIPT.setResultType(Long.class);
+
+        BUILD_SCRIPT = new DefaultRedisScript<>();
+        BUILD_SCRIPT.setLocation(new ClassPathResource("blog_hot_build.lua"));
+        BUILD_SCRIPT.setResultType(Long.class);
+    }
+
+    private static final int LOAD_BATCH_SIZE = 1000;
+    /**
+     * 游标中的对数热度经过换算后允许的误差，差值在这个范围内视为同一个分数
+     */
+    private static final double LOG_SCORE_EPSILON = 1e-9;
+    /**
+     * 构建和衰减使用同一把锁，构建过程中 epoch 不会变化
+     */
+    private static final String LOCK_KEY = "lock:blog:hot";
+
+    /**
+     * 热度的半衰期
+     */
+    @Value("${hmdp.blog.hot.half-life-hours:24}")
+    private double halfLifeHours;
+    @Value("${hmdp.blog.hot.like-weight:1}")
+    private double likeWeight;
+    @Value("${hmdp.blog.hot.comment-weight:2}")
+    private double commentWeight;
+    @Value("${hmdp.blog.hot.post-weight:3}")
+    private double postWeight;
+    /**
+     * 排行中最多保留的笔记数
+     */
+    @Value("${hmdp.blog.hot.max-size:10000}")
+    private int maxSize;
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final RedissonClient redissonClient;
+    private final BlogMapper blogMapper;
+    private final CacheClient cacheClient;
+
+    private volatile boolean ready;
+    /**
+     * 排行开始构建的时间，在这之前发生的点赞、评论按笔记的发布时间计入了初始热度
+     */
+    private volatile long builtAt;
+
+    public BlogHotRanking(StringRedisTemplate stringRedisTemplate, RedissonClient redissonClient,
+                          BlogMapper blogMapper, CacheClient cacheClient) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.redissonClient = redissonClient;
+        this.blogMapper = blogMapper;
+        this.cacheClient = cacheClient;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        String built = stringRedisTemplate.opsForValue().get(RedisConstants.BLOG_HOT_BUILT_KEY);
+        if (built != null) {
+            builtAt = Long.parseLong(built);
+            ready = true;
+            return;
+        }
+        CompletableFuture.runAsync(this::load).exceptionally(e -> {
+            log.error("构建热门笔记排行失败", e);
+            return null;
+        });
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * 按 id 分批扫描 tb_blog，按发布时间计算初始热度，多个实例只有一个构建
+     */
+    private void load() {
+        RLock lock = redissonClient.getLock(LOCK_KEY);
+        lock.lock();
+        try {
+            String built = stringRedisTemplate.opsForValue().get(RedisConstants.BLOG_HOT_BUILT_KEY);
+            if (built != null) {
+                // 其它实例已经构建完成
+                builtAt = Long.parseLong(built);
+                ready = true;
+                return;
+            }
+            long begin = System.currentTimeMillis();
+            // 上次构建可能中途失败，临时 ZSET 中的初始热度不能重复累加，从头构建
+            stringRedisTemplate.delete(RedisConstants.BLOG_HOT_BUILDING_KEY);
+            stringRedisTemplate.opsForValue().setIfAbsent(RedisConstants.BLOG_HOT_EPOCH_KEY, String.valueOf(begin));
+            long epoch = Long.parseLong(stringRedisTemplate.opsForValue().get(RedisConstants.BLOG_HOT_EPOCH_KEY));
+            // 构建期间暂停刷写计数，数据库中的计数和增量不会在读取过程中变化
+            RLock flushLock = redissonClient.getLock(BlogCounterFlusher.LOCK_KEY);
+            flushLock.lock();
+            long count = 0;
+            try {
+                long lastId = 0;
+                while (true) {
+                    List<Blog> blogs = blogMapper.selectList(new QueryWrapper<Blog>()
+                            .select("id", "liked", "comments", "create_time")
+                            .gt("id", lastId)
+                            .orderByAsc("id")
+                            .last("limit " + LOAD_BATCH_SIZE));
+                    if (!blogs.isEmpty()) {
+                        count += build(blogs, epoch);
+                    }
+                    if (blogs.size() < LOAD_BATCH_SIZE) {
+                        break;
+                    }
+                    lastId = blogs.get(blogs.size() - 1).getId();
+                }
+                // 构建期间的点赞、评论已经累加到临时 ZSET，直接覆盖正式排行
+                if (count > 0) {
+                    stringRedisTemplate.rename(RedisConstants.BLOG_HOT_BUILDING_KEY, RedisConstants.BLOG_HOT_KEY);
+                } else {
+                    stringRedisTemplate.delete(RedisConstants.BLOG_HOT_KEY);
+                }
+            } finally {
+                flushLock.unlock();
+            }
+            // 扫描全部完成后才写入构建完成标记
+            stringRedisTemplate.opsForValue().set(RedisConstants.BLOG_HOT_BUILT_KEY, String.valueOf(begin));
+            builtAt = begin;
+            ready = true;
+            log.info("热门笔记排行构建完成, 笔记数: {}, 耗时: {}ms", count, System.currentTimeMillis() - begin);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 一批笔记的初始热度写入临时 ZSET，加上还没有刷写的点赞数、评论数增量
+     */
+    private long build(List<Blog> blogs, long epoch) {
+        List<String> args = new ArrayList<>(5 + blogs.size() * 4);
+        args.add(String.valueOf(epoch));
+        args.add(String.valueOf(halfLifeMillis()));
+        args.add(String.valueOf(postWeight));
+        args.add(String.valueOf(likeWeight));
+        args.add(String.valueOf(commentWeight));
+        for (Blog blog : blogs) {
+            args.add(blog.getId().toString());
+            args.add(String.valueOf(blog.getLiked() == null ? 0 : blog.getLiked()));
+            args.add(String.valueOf(blog.getComments() == null ? 0 : blog.getComments()));
+            args.add(String.valueOf(blog.getCreateTime() == null ? epoch : toMillis(blog.getCreateTime())));
+        }
+        Long count = stringRedisTemplate.execute(BUILD_SCRIPT, Arrays.asList(
+                RedisConstants.BLOG_HOT_BUILDING_KEY,
+                BlogCounterFlusher.deltaKey(BlogCounterFlusher.LIKED),
+                BlogCounterFlusher.flushingKey(BlogCounterFlusher.LIKED),
+                BlogCounterFlusher.deltaKey(BlogCounterFlusher.COMMENTS),
+                BlogCounterFlusher.flushingKey(BlogCounterFlusher.COMMENTS)), args.toArray());
+        return count == null ? 0 : count;
+    }
+
+    private long halfLifeMillis() {
+        return (long) (halfLifeHours * TimeUnit.HOURS.toMillis(1));
+    }
+
+    private static long toMillis(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    /**
+     * 发布笔记
+     */
+    public void onPost(Long blogId) {
+        incr(blogId, postWeight, System.currentTimeMillis());
+    }
+
+    /**
+     * 点赞或取消点赞
+     * @param likedAt 点赞的时间，取消点赞时减去的是点赞当时加上的热度
+     */
+    public void onLike(Long blogId, boolean liked, long likedAt) {
+        incr(blogId, liked ? likeWeight : -likeWeight, liked ? likedAt : contributedAt(blogId, likedAt));
+    }
+
+    /**
+     * 发表或删除评论
+     * @param commentedAt 评论的创建时间，删除评论时减去的是评论当时加上的热度
+     */
+    public void onComment(Long blogId, boolean added, long commentedAt) {
+        incr(blogId, added ? commentWeight : -commentWeight, added ? commentedAt : contributedAt(blogId, commentedAt));
+    }
+
+    /**
+     * 行为计入热度时使用的时间：排行构建之前的行为按笔记的发布时间计入了初始热度，
+     * 发布时间从笔记缓存读取，不需要每次取消点赞都查询数据库
+     */
+    private long contributedAt(Long blogId, long eventTime) {
+        if (eventTime >= builtAt) {
+            return eventTime;
+        }
+        Blog blog = cacheClient.get(RedisConstants.CACHE_BLOG_KEY, blogId, Blog.class, blogMapper::selectById,
+                RedisConstants.CACHE_BLOG_TTL, TimeUnit.MINUTES, CacheStrategy.PASS_THROUGH);
+        return blog == null || blog.getCreateTime() == null ? eventTime : toMillis(blog.getCreateTime());
+    }
+
+    private void incr(Long blogId, double weight, long eventTime) {
+        stringRedisTemplate.execute(INCR_SCRIPT,
+                Arrays.asList(RedisConstants.BLOG_HOT_KEY, RedisConstants.BLOG_HOT_EPOCH_KEY,
+                        RedisConstants.BLOG_HOT_BUILDING_KEY),
+                blogId.toString(), String.valueOf(weight),
+                String.valueOf(eventTime), String.valueOf(halfLifeMillis()));
+    }
+
+    /**
+     * 定时统一衰减，多个实例只有一个执行
+     */
+    @Scheduled(fixedDelayString = "${hmdp.blog.hot.rebase-ms:3600000}")
+    public void rebase() {
+        RLock lock = redissonClient.getLock(LOCK_KEY);
+        if (!lock.tryLock()) {
+            return;
+        }
+        try {
+            Long size = stringRedisTemplate.execute(REBASE_SCRIPT,
+                    Arrays.asList(RedisConstants.BLOG_HOT_KEY, RedisConstants.BLOG_HOT_EPOCH_KEY),
+                    String.valueOf(System.currentTimeMillis()), String.valueOf(halfLifeMillis()),
+                    String.valueOf(maxSize));
+            log.debug("热门笔记排行衰减完成, 笔记数: {}", size);
+        } catch (Exception e) {
+            log.error("热门笔记排行衰减失败，下次继续", e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 按热度从高到低查询 [from, from + size) 的笔记id
+     */
+    public List<Long> range(long from, int size) {
+        Set<String> ids = stringRedisTemplate.opsForZSet().reverseRange(RedisConstants.BLOG_HOT_KEY, from, from + size - 1);
+        if (ids == null || ids.isEmpty()) {
+            return Collections.emptyList();
+        }
+        return ids.stream().map(Long::valueOf).collect(Collectors.toList());
+    }
+
+    /**
+     * 游标分页：按热度从高到低查询游标之后的 size 篇笔记，与 ZREVRANGEBYSCORE 一样，分数相同时按 member 字典序倒序。
+     * 衰减会改变所有分数，所以游标中保存的是与 epoch 无关的对数热度 log2(score) + epoch / halfLife，
+     * 翻页期间发生衰减也能换算回当前的分数继续查询
+     * @param last 上一页的游标，null 表示第一页
+     */
+    public Page scroll(ScrollCursor last, int size) {
+        while (true) {
+            String epochValue = stringRedisTemplate.opsForValue().get(RedisConstants.BLOG_HOT_EPOCH_KEY);
+            if (epochValue == null) {
+                return new Page(Collections.emptyList(), null);
+            }
+            long epoch = Long.parseLong(epochValue);
+            Page page = scroll(last, size, epoch);
+            // 查询期间发生了衰减，分数和 epoch 不一致，重新查询
+            if (epochValue.equals(stringRedisTemplate.opsForValue().get(RedisConstants.BLOG_HOT_EPOCH_KEY))) {
+                return page;
+            }
+        }
+    }
+
+    private Page scroll(ScrollCursor last, int size, long epoch) {
+        double lastLog = last == null ? 0 : Double.longBitsToDouble(last.getSortKey());
+        String lastMember = last == null ? null : String.valueOf(last.getId());
+        // 1.从游标的分数（稍微放宽，包含换算误差）开始向后查询，跳过游标及之前的笔记
+        double max = last == null ? Double.POSITIVE_INFINITY
+                : Math.pow(2, lastLog - epoch / (double) halfLifeMillis()) * (1 + 10 * LOG_SCORE_EPSILON);
+        List<Long> ids = new ArrayList<>(size);
+        double tailLog = 0;
+        long offset = 0;
+        int count = size + 1;
+        while (ids.size() < size) {
+            Set<ZSetOperations.TypedTuple<String>> tuples = stringRedisTemplate.opsForZSet()
+                    .reverseRangeByScoreWithScores(RedisConstants.BLOG_HOT_KEY, Double.NEGATIVE_INFINITY, max, offset, count);
+            if (tuples == null || tuples.isEmpty()) {
+                break;
+            }
+            for (ZSetOperations.TypedTuple<String> tuple : tuples) {
+                double tupleLog = logScore(tuple.getScore(), epoch);
+                if (last != null && !isAfter(tupleLog, tuple.getValue(), lastLog, lastMember)) {
+                    continue;
+                }
+                ids.add(Long.valueOf(tuple.getValue()));
+                tailLog = tupleLog;
+                if (ids.size() == size) {
+                    break;
+                }
+            }
+            if (tuples.size() < count) {
+                break;
+            }
+            offset += count;
+        }
+        // 2.满一页才返回下一页的游标
+        String cursor = ids.size() < size ? null
+                : new ScrollCursor(Double.doubleToLongBits(tailLog), ids.get(ids.size() - 1)).encode();
+        return new Page(ids, cursor);
+    }
+
+    /**
+     * 与 epoch 无关的对数热度，衰减前后不变；分数为 0 时是负无穷
+     */
+    private double logScore(Double score, long epoch) {
+        return Math.log(score == null ? 0 : score) / Math.log(2) + epoch / (double) halfLifeMillis();
+    }
+
+    private static boolean isAfter(double value, String member, double lastValue, String lastMember) {
+        if (value == lastValue || Math.abs(value - lastValue) <= LOG_SCORE_EPSILON) {
+            return member.compareTo(lastMember) < 0;
+        }
+        return value < lastValue;
+    }
+
+    @Data
+    @AllArgsConstructor
+    public static class Page {
+        private List<Long> ids;
+        /**
+         * 下一页的游标，为空表示没有更多数据
+         */
+        private String cursor;
+    }
+}
@@ -0,0 +1,103 @@
+package com.hmdp.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.Cursor;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.ScanOptions;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * 启动时把旧的点赞用户 SET（blog:liked:{blogId}）转换成按点赞时间排序的 ZSET。
+ * <p>
+ * 旧数据没有点赞时间，分数记为0。这里是唯一的转换入口，点赞脚本只处理 ZSET：
+ * 启动转换完成前，点赞前先调用 {@link #migrate(String)} 转换这一个 key。
+ * 转换是幂等的，多个实例同时启动也没有问题
+ */
+@Slf4j
+@Component
+public class BlogLikedMigrator implements ApplicationRunner {
+
+    private static final DefaultRedisScript<Long> MIGRATE_SCRIPT;
+
+    static {
+        MIGRATE_SCRIPT = new DefaultRedisScript<>();
+        MIGRATE_SCRIPT.setLocation(new ClassPathResource("blog_liked_migrate.lua"));
+        MIGRATE_SCRIPT.setResultType(Long.class);
+    }
+
+    @Value("${hmdp.blog.liked.migrate-on-startup:true}")
+    private boolean migrateOnStartup;
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    /**
+     * 所有 key 都已经转换完成
+     */
+    private volatile boolean migrated;
+
+    public BlogLikedMigrator(StringRedisTemplate stringRedisTemplate) {
+        this.stringRedisTemplate = stringRedisTemplate;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (migrateOnStartup) {
+            migrate();
+        } else {
+            migrated = true;
+        }
+    }
+
+    public boolean isMigrated() {
+        return migrated;
+    }
+
+    /**
+     * 转换单个 key，已经是 ZSET 或者不存在时什么都不做
+     */
+    public void migrate(String key) {
+        stringRedisTemplate.execute(MIGRATE_SCRIPT, Collections.singletonList(key));
+    }
+
+    public void migrate() {
+        long begin = System.currentTimeMillis();
+        // 1.SCAN 出所有点赞 key，不阻塞 Redis
+        List<String> keys = stringRedisTemplate.execute((RedisCallback<List<String>>) connection -> {
+            List<String> list = new ArrayList<>();
+            ScanOptions options = ScanOptions.scanOptions().match(RedisConstants.BLOG_LIKED_KEY + "*").count(1000).build();
+            try (Cursor<byte[]> cursor = connection.scan(options)) {
+                while (cursor.hasNext()) {
+                    list.add(new String(cursor.next(), StandardCharsets.UTF_8));
+                }
+            } catch (Exception e) {
+                throw new IllegalStateException("扫描点赞 key 失败", e);
+            }
+            return list;
+        });
+        if (keys == null) {
+            return;
+        }
+        // 2.逐个转换，已经是 ZSET 的 key 脚本直接返回
+        int converted = 0;
+        for (String key : keys) {
+            Long members = stringRedisTemplate.execute(MIGRATE_SCRIPT, Collections.singletonList(key));
+            if (members != null && members > 0) {
+                converted++;
+            }
+        }
+        migrated = true;
+        log.info("点赞用户集合转换完成, key 数: {}, 转换数: {}, 耗时: {}ms",
+                keys.size(), converted, System.currentTimeMillis() - begin);
+    }
+}
@@ -0,0 +1,747 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.util.BooleanUtil;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RLock;
+import org.redisson.api.RTopic;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.RedisStringCommands;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.types.Expiration;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * 通用缓存工具，封装缓存穿透、互斥锁、逻辑过期三种读取策略。
+ * <p>
+ * 缓存值统一存成 {@link RedisData} 信封：逻辑过期策略使用 expireTime，其它策略 expireTime 为空、依赖 key 的 TTL；
+ * 空字符串表示数据库中不存在，用来防止缓存穿透。
+ * <p>
+ * 信封的格式由 {@link CacheCodec} 决定，hmdp.cache.codec 只控制写入格式，读取时按头部自动识别，
+ * 所以切换格式时先让所有实例升级到能识别新格式的版本，再修改配置即可。
+ * <p>
+ * 配置了本地缓存的 keyPrefix 会在 Redis 前面加一层 Caffeine（W-TinyLFU 淘汰），
+ * 删除或覆盖缓存时通过 Redis pub/sub 通知所有实例清除本地缓存；本地缓存写入后固定时间过期，
+ * 即使通知丢失，脏数据最多存在 expire-seconds
+ */
+@Slf4j
+@Component
+public class CacheClient {
+
+    private static final long LOCK_TTL_SECONDS = 10L;
+
+    /**
+     * 表示命中了空值的哨兵
+     */
+    private static final RedisData NULL_VALUE = new RedisData();
+
+    private static final CacheCodec JSON_CODEC = new JsonCacheCodec();
+    private static final CacheCodec BINARY_CODEC = new BinaryCacheCodec(JSON_CODEC);
+
+    /**
+     * TTL 随机增加的比例，避免同一批写入的 key 同时过期造成雪崩
+     */
+    @Value("${hmdp.cache.ttl-jitter:0.1}")
+    private double ttlJitter;
+
+    /**
+     * 逻辑过期的 key 的物理 TTL 是逻辑过期时间的多少倍，作为兜底：长时间没有访问的 key 最终会被删除，
+     * 内存不会随着访问过的 key 无限增长；仍在被访问的 key 逻辑过期后重建时会重新设置物理 TTL。0 表示永不过期
+     */
+    @Value("${hmdp.cache.logical-expire.physical-ttl-factor:24}")
+    private long physicalTtlFactor;
+
+    /**
+     * 写入缓存使用的格式：json 或 binary
+     */
+    @Value("${hmdp.cache.codec:json}")
+    private String codecName;
+
+    private CacheCodec codec;
+
+    /**
+     * 使用本地缓存的 keyPrefix，为空表示不开启本地缓存
+     */
+    @Value("${hmdp.cache.local.prefixes:}")
+    private String[] localPrefixes;
+    /**
+     * 本地缓存最多保存的 key 数
+     */
+    @Value("${hmdp.cache.local.maximum-size:10000}")
+    private long localMaximumSize;
+    /**
+     * 本地缓存写入后的过期时间，是丢失失效通知时脏数据存在的上限
+     */
+    @Value("${hmdp.cache.local.expire-seconds:30}")
+    private long localExpireSeconds;
+
+    /**
+     * 逻辑过期重建线程数
+     */
+    @Value("${hmdp.cache.rebuild.threads:10}")
+    private int rebuildThreads;
+    /**
+     * 重建任务队列长度，队列满时放弃本次重建，继续返回旧数据
+     */
+    @Value("${hmdp.cache.rebuild.queue-capacity:1000}")
+    private int rebuildQueueCapacity;
+
+    private ThreadPoolExecutor rebuildExecutor;
+
+    /**
+     * 等待其它线程或其它实例加载同一个 key 的最长时间，超时后返回缓存中的旧值，没有旧值时失败，不再查询数据库
+     */
+    @Value("${hmdp.cache.load-wait-ms:3000}")
+    private long loadWaitMillis;
+
+    private final StringRedisTemplate stringRedisTemplate;
+    private final RedissonClient redissonClient;
+
+    /**
+     * keyPrefix -> 命中率统计
+     */
+    private final ConcurrentHashMap<String, CacheStats> stats = new ConcurrentHashMap<>();
+
+    /**
+     * 正在加载的 key -> 加载结果，同一个 key 在本实例内只有一个线程查询数据库
+     */
+    private final ConcurrentHashMap<String, CompletableFuture<Object>> loading = new ConcurrentHashMap<>();
+
+    /**
+     * 本地缓存，value 是 data 已经反序列化好的 RedisData，调用方不能修改返回的对象
+     */
+    private Cache<String, RedisData> localCache;
+    private RTopic invalidateTopic;
+
+    public CacheClient(StringRedisTemplate stringRedisTemplate, RedissonClient redissonClient) {
+        this.stringRedisTemplate = stringRedisTemplate;
+        this.redissonClient = redissonClient;
+    }
+
+    @PostConstruct
+    private void init() {
+        codec = BINARY_CODEC.name().equals(codecName) ? BINARY_CODEC : JSON_CODEC;
+        AtomicInteger threadIndex = new AtomicInteger();
+        rebuildExecutor = new ThreadPoolExecutor(rebuildThreads, rebuildThreads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(rebuildQueueCapacity), r -> {
+            Thread thread = new Thread(r, "cache-rebuild-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }, new ThreadPoolExecutor.AbortPolicy());
+        if (localPrefixes.length == 0) {
+            return;
+        }
+        localCache = Caffeine.newBuilder()
+                .maximumSize(localMaximumSize)
+                .expireAfterWrite(localExpireSeconds, TimeUnit.SECONDS)
+                .recordStats()
+                .build();
+        // 订阅失效通知，清除本地缓存
+        invalidateTopic = redissonClient.getTopic(RedisConstants.CACHE_INVALIDATE_TOPIC, StringCodec.INSTANCE);
+        invalidateTopic.addListener(String.class, (channel, key) -> localCache.invalidate(key));
+    }
+
+    @PreDestroy
+    private void destroy() {
+        rebuildExecutor.shutdownNow();
+    }
+
+    /**
+     * 写入缓存并设置 TTL
+     */
+    public void set(String key, Object value, Long time, TimeUnit unit) {
+        write(key, value, time, unit);
+        publishInvalidate(key);
+    }
+
+    /**
+     * 写入缓存并设置逻辑过期时间，key 本身只有一个很长的兜底 TTL
+     */
+    public void setWithLogicalExpire(String key, Object value, Long time, TimeUnit unit) {
+        writeWithLogicalExpire(key, value, time, unit);
+        publishInvalidate(key);
+    }
+
+    /**
+     * 批量写入逻辑过期的缓存，所有 key 在一次 pipeline 中写入，用于预热。
+     * 只清除本实例的本地缓存，其它实例的本地缓存最多在 expire-seconds 后过期
+     * @param values key -> 缓存的对象
+     */
+    public void setWithLogicalExpire(Map<String, ?> values, Long time, TimeUnit unit) {
+        if (values.isEmpty()) {
+            return;
+        }
+        Map<byte[], byte[]> raw = new LinkedHashMap<>(values.size() * 4 / 3 + 1);
+        values.forEach((key, value) -> {
+            RedisData redisData = new RedisData();
+            redisData.setData(value);
+            redisData.setExpireTime(LocalDateTime.now().plus(jitter(time, unit), ChronoUnit.MILLIS));
+            raw.put(key.getBytes(StandardCharsets.UTF_8), encode(redisData));
+        });
+        Expiration expiration = physicalExpiration(time, unit);
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            raw.forEach((key, value) -> connection.set(key, value, expiration, RedisStringCommands.SetOption.upsert()));
+            return null;
+        });
+        if (localCache != null) {
+            values.keySet().stream().filter(this::isLocal).forEach(localCache::invalidate);
+        }
+    }
+
+    /**
+     * 删除 Redis 缓存，并通知所有实例删除本地缓存
+     */
+    public void delete(String key) {
+        stringRedisTemplate.delete(key);
+        publishInvalidate(key);
+    }
+
+    /**
+     * 批量删除 Redis 缓存，一次 DEL 完成
+     */
+    public void delete(Collection<String> keys) {
+        if (keys.isEmpty()) {
+            return;
+        }
+        stringRedisTemplate.delete(keys);
+        keys.forEach(this::publishInvalidate);
+    }
+
+    private void write(String key, Object value, Long time, TimeUnit unit) {
+        RedisData redisData = new RedisData();
+        redisData.setData(value);
+        writeRaw(key, encode(redisData), Expiration.milliseconds(jitter(time, unit)));
+    }
+
+    private void writeWithLogicalExpire(String key, Object value, Long time, TimeUnit unit) {
+        RedisData redisData = new RedisData();
+        redisData.setData(value);
+        redisData.setExpireTime(LocalDateTime.now().plus(jitter(time, unit), ChronoUnit.MILLIS));
+        writeRaw(key, encode(redisData), physicalExpiration(time, unit));
+    }
+
+    private Expiration physicalExpiration(Long time, TimeUnit unit) {
+        if (physicalTtlFactor <= 0) {
+            return Expiration.persistent();
+        }
+        return Expiration.milliseconds(jitter(time, unit) * physicalTtlFactor);
+    }
+
+    private byte[] encode(RedisData redisData) {
+        // 二进制格式不支持的类型由 BinaryCacheCodec 自己退回 JSON
+        return codec.encode(redisData);
+    }
+
+    private void writeRaw(String key, byte[] value, Expiration expiration) {
+        byte[] rawKey = key.getBytes(StandardCharsets.UTF_8);
+        stringRedisTemplate.execute((RedisCallback<Boolean>) connection ->
+                connection.set(rawKey, value, expiration, RedisStringCommands.SetOption.upsert()));
+    }
+
+    private boolean isLocal(String key) {
+        return localCache != null && Arrays.stream(localPrefixes).anyMatch(key::startsWith);
+    }
+
+    private void publishInvalidate(String key) {
+        if (!isLocal(key)) {
+            return;
+        }
+        localCache.invalidate(key);
+        invalidateTopic.publish(key);
+    }
+
+    /**
+     * 按策略查询单个对象，未命中时调用 dbFallback 查询数据库并写入缓存
+     */
+    public <R, ID> R get(String keyPrefix, ID id, Class<R> type, Function<ID, R> dbFallback,
+                         Long time, TimeUnit unit, CacheStrategy strategy) {
+        return get(keyPrefix, id, new ValueType(type, false), dbFallback, time, unit, strategy);
+    }
+
+    /**
+     * 按策略查询列表，空列表也会被缓存
+     */
+    public <R, ID> List<R> getList(String keyPrefix, ID id, Class<R> elementType, Function<ID, List<R>> dbFallback,
+                                   Long time, TimeUnit unit, CacheStrategy strategy) {
+        return get(keyPrefix, id, new ValueType(elementType, true), dbFallback, time, unit, strategy);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <R, ID> R get(String keyPrefix, ID id, ValueType type, Function<ID, R> dbFallback,
+                          Long time, TimeUnit unit, CacheStrategy strategy) {
+        String key = keyPrefix + id;
+        CacheStats stat = stats.computeIfAbsent(keyPrefix, k -> new CacheStats());
+        boolean local = isLocal(key);
+        // 0.先查本地缓存
+        if (local) {
+            RedisData cached = localCache.getIfPresent(key);
+            if (cached != null) {
+                stat.localHits.increment();
+                return cached == NULL_VALUE ? null : checkExpire(key, id, cached, dbFallback, time, unit, strategy, stat);
+            }
+        }
+        // 1.从 redis 查询
+        RedisData redisData = read(key, type);
+        if (redisData == NULL_VALUE) {
+            // 命中的是防止缓存穿透写入的空值
+            stat.nullHits.increment();
+            if (local) {
+                localCache.put(key, NULL_VALUE);
+            }
+            return null;
+        }
+        if (redisData != null) {
+            // 2.命中，判断是否逻辑过期
+            R value = (R) redisData.getData();
+            if (local) {
+                localCache.put(key, toLocal(redisData.getExpireTime(), value));
+            }
+            if (strategy == CacheStrategy.LOGICAL_EXPIRE && isExpired(redisData)) {
+                // 2.1.已过期，返回旧数据，并异步重建
+                stat.staleHits.increment();
+                rebuildAsync(key, id, dbFallback, time, unit, stat);
+            } else {
+                stat.hits.increment();
+            }
+            return value;
+        }
+        // 3.未命中，查询数据库
+        stat.misses.increment();
+        R value = strategy == CacheStrategy.PASS_THROUGH
+                ? load(key, id, dbFallback, time, unit, strategy, stat)
+                : loadWithMutex(key, id, type, dbFallback, time, unit, strategy, stat);
+        if (local) {
+            // 逻辑过期时间只用于判断是否需要重建，刚查出来的数据不会过期
+            localCache.put(key, value == null ? NULL_VALUE : toLocal(null, value));
+        }
+        return value;
+    }
+
+    /**
+     * 批量查询：本地缓存之外的 key 用一次 MGET 查询，未命中的 id 一次性交给 dbFallback 查询，
+     * 再用一次 pipeline 回写缓存（不存在的 id 写入空值）。批量加载不加互斥锁，逻辑过期的数据仍然异步重建
+     * @param dbFallback 根据一批 id 查询数据库，返回 id -> 对象，不存在的 id 不放入结果
+     * @return id -> 对象，按 ids 的顺序，不存在的 id 不放入结果
+     */
+    @SuppressWarnings("unchecked")
+    public <R, ID> Map<ID, R> getAll(String keyPrefix, Collection<ID> ids, Class<R> type,
+                                     Function<Collection<ID>, Map<ID, R>> dbFallback,
+                                     Long time, TimeUnit unit, CacheStrategy strategy) {
+        CacheStats stat = stats.computeIfAbsent(keyPrefix, k -> new CacheStats());
+        ValueType valueType = new ValueType(type, false);
+        Function<ID, R> singleFallback = id -> dbFallback.apply(Collections.singletonList(id)).get(id);
+        Map<ID, R> result = new LinkedHashMap<>();
+        List<ID> remoteIds = new ArrayList<>();
+        // 1.先查本地缓存
+        for (ID id : new LinkedHashSet<>(ids)) {
+            String key = keyPrefix + id;
+            RedisData cached = isLocal(key) ? localCache.getIfPresent(key) : null;
+            if (cached == null) {
+                remoteIds.add(id);
+                result.put(id, null);
+                continue;
+            }
+            stat.localHits.increment();
+            if (cached != NULL_VALUE) {
+                result.put(id, checkExpire(key, id, cached, singleFallback, time, unit, strategy, stat));
+            }
+        }
+        if (remoteIds.isEmpty()) {
+            return result;
+        }
+        // 2.一次 MGET 查询 redis
+        byte[][] rawKeys = remoteIds.stream()
+                .map(id -> (keyPrefix + id).getBytes(StandardCharsets.UTF_8))
+                .toArray(byte[][]::new);
+        List<byte[]> values = stringRedisTemplate.execute((RedisCallback<List<byte[]>>) connection -> connection.mGet(rawKeys));
+        List<ID> missIds = new ArrayList<>();
+        for (int i = 0; i < remoteIds.size(); i++) {
+            ID id = remoteIds.get(i);
+            String key = keyPrefix + id;
+            RedisData redisData = values == null ? null : decode(key, values.get(i), valueType);
+            if (redisData == null) {
+                stat.misses.increment();
+                missIds.add(id);
+                continue;
+            }
+            if (redisData == NULL_VALUE) {
+                stat.nullHits.increment();
+                result.remove(id);
+            } else if (strategy == CacheStrategy.LOGICAL_EXPIRE && isExpired(redisData)) {
+                stat.staleHits.increment();
+                rebuildAsync(key, id, singleFallback, time, unit, stat);
+                result.put(id, (R) redisData.getData());
+            } else {
+                stat.hits.increment();
+                result.put(id, (R) redisData.getData());
+            }
+            if (isLocal(key)) {
+                localCache.put(key, redisData == NULL_VALUE ? NULL_VALUE : toLocal(redisData.getExpireTime(), redisData.getData()));
+            }
+        }
+        if (missIds.isEmpty()) {
+            return result;
+        }
+        // 3.未命中的 id 一次查询数据库
+        long begin = System.nanoTime();
+        Map<ID, R> loaded = dbFallback.apply(missIds);
+        stat.loads.increment();
+        stat.loadNanos.add(System.nanoTime() - begin);
+        // 4.一次 pipeline 回写缓存
+        Expiration physicalExpiration = physicalExpiration(time, unit);
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            for (ID id : missIds) {
+                byte[] rawKey = (keyPrefix + id).getBytes(StandardCharsets.UTF_8);
+                R value = loaded.get(id);
+                if (value == null) {
+                    connection.set(rawKey, new byte[0], Expiration.from(RedisConstants.CACHE_NULL_TTL, TimeUnit.MINUTES),
+                            RedisStringCommands.SetOption.upsert());
+                    continue;
+                }
+                RedisData redisData = new RedisData();
+                redisData.setData(value);
+                if (strategy == CacheStrategy.LOGICAL_EXPIRE) {
+                    redisData.setExpireTime(LocalDateTime.now().plus(jitter(time, unit), ChronoUnit.MILLIS));
+                    connection.set(rawKey, encode(redisData), physicalExpiration, RedisStringCommands.SetOption.upsert());
+                } else {
+                    connection.set(rawKey, encode(redisData), Expiration.milliseconds(jitter(time, unit)),
+                            RedisStringCommands.SetOption.upsert());
+                }
+            }
+            return null;
+        });
+        for (ID id : missIds) {
+            R value = loaded.get(id);
+            if (value == null) {
+                result.remove(id);
+            } else {
+                result.put(id, value);
+            }
+            String key = keyPrefix + id;
+            if (isLocal(key)) {
+                localCache.put(key, value == null ? NULL_VALUE : toLocal(null, value));
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 逻辑过期策略下数据已过期时触发异步重建，返回的仍然是旧数据
+     */
+    @SuppressWarnings("unchecked")
+    private <R, ID> R checkExpire(String key, ID id, RedisData redisData, Function<ID, R> dbFallback,
+                                  Long time, TimeUnit unit, CacheStrategy strategy, CacheStats stat) {
+        if (strategy == CacheStrategy.LOGICAL_EXPIRE && isExpired(redisData)) {
+            rebuildAsync(key, id, dbFallback, time, unit, stat);
+        }
+        return (R) redisData.getData();
+    }
+
+    private RedisData toLocal(LocalDateTime expireTime, Object value) {
+        RedisData redisData = new RedisData();
+        redisData.setExpireTime(expireTime);
+        redisData.setData(value);
+        return redisData;
+    }
+
+    /**
+     * 互斥锁重建：同一个 JVM 内并发的加载合并成一个 CompletableFuture，其它线程等待结果而不是轮询；
+     * 只有发起加载的线程去竞争 Redis 互斥锁，用于协调多个实例
+     */
+    @SuppressWarnings("unchecked")
+    private <R, ID> R loadWithMutex(String key, ID id, ValueType type, Function<ID, R> dbFallback,
+                                    Long time, TimeUnit unit, CacheStrategy strategy, CacheStats stat) {
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        CompletableFuture<Object> inflight = loading.putIfAbsent(key, future);
+        if (inflight != null) {
+            // 已经有线程在加载，等待它的结果
+            stat.coalesced.increment();
+            try {
+                return (R) inflight.get(loadWaitMillis, TimeUnit.MILLISECONDS);
+            } catch (ExecutionException e) {
+                throw e.getCause() instanceof RuntimeException
+                        ? (RuntimeException) e.getCause() : new CompletionException(e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("等待缓存加载被中断", e);
+            } catch (TimeoutException e) {
+                // 加载线程卡住（例如数据库慢查询），不再等待，也不自己查询数据库，避免所有等待者一起压到数据库上
+                return readAfterTimeout(key, type, stat);
+            }
+        }
+        try {
+            R value = loadWithLock(key, id, type, dbFallback, time, unit, strategy, stat);
+            future.complete(value);
+            return value;
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            loading.remove(key, future);
+        }
+    }
+
+    /**
+     * 用 Redisson 锁协调多个实例，等待锁时由锁释放的通知唤醒，不轮询 Redis
+     */
+    @SuppressWarnings("unchecked")
+    private <R, ID> R loadWithLock(String key, ID id, ValueType type, Function<ID, R> dbFallback,
+                                   Long time, TimeUnit unit, CacheStrategy strategy, CacheStats stat) {
+        // 逻辑过期的异步重建在一个线程加锁、另一个线程解锁，使用 SETNX 锁 lockKey，这里使用另一个 key
+        RLock lock = redissonClient.getLock(lockKey(key) + ":load");
+        boolean locked;
+        try {
+            // 1.获取互斥锁，其它实例正在重建时最多等待 loadWaitMillis
+            locked = lock.tryLock(loadWaitMillis, TimeUnit.SECONDS.toMillis(LOCK_TTL_SECONDS), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("等待缓存重建被中断", e);
+        }
+        if (!locked) {
+            return readAfterTimeout(key, type, stat);
+        }
+        try {
+            // 2.获取锁成功，再次检查缓存，可能已经被其它实例重建
+            RedisData redisData = read(key, type);
+            if (redisData != null) {
+                return redisData == NULL_VALUE ? null : (R) redisData.getData();
+            }
+            // 3.查询数据库并写入缓存
+            return load(key, id, dbFallback, time, unit, strategy, stat);
+        } finally {
+            // 4.释放互斥锁
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 等待加载超时：缓存中有值（其它实例刚写入，或者逻辑过期的旧值）就返回，否则失败
+     */
+    @SuppressWarnings("unchecked")
+    private <R> R readAfterTimeout(String key, ValueType type, CacheStats stat) {
+        stat.loadWaitTimeouts.increment();
+        RedisData redisData = read(key, type);
+        if (redisData == null) {
+            throw new IllegalStateException("等待缓存加载超时: " + key);
+        }
+        return redisData == NULL_VALUE ? null : (R) redisData.getData();
+    }
+
+    private <R, ID> R load(String key, ID id, Function<ID, R> dbFallback,
+                           Long time, TimeUnit unit, CacheStrategy strategy, CacheStats stat) {
+        // 1.查询数据库
+        long begin = System.nanoTime();
+        R value = dbFallback.apply(id);
+        stat.loads.increment();
+        stat.loadNanos.add(System.nanoTime() - begin);
+        // 2.不存在，写入空值防止缓存穿透
+        if (value == null) {
+            stringRedisTemplate.opsForValue().set(key, "", RedisConstants.CACHE_NULL_TTL, TimeUnit.MINUTES);
+            return null;
+        }
+        // 3.存在，写入 redis
+        if (strategy == CacheStrategy.LOGICAL_EXPIRE) {
+            writeWithLogicalExpire(key, value, time, unit);
+        } else {
+            write(key, value, time, unit);
+        }
+        return value;
+    }
+
+    private <R, ID> void rebuildAsync(String key, ID id, Function<ID, R> dbFallback, Long time, TimeUnit unit,
+                                      CacheStats stat) {
+        String lockKey = lockKey(key);
+        // 1.获取互斥锁，失败说明已经有线程（可能在其它实例）在重建
+        if (!tryLock(lockKey)) {
+            return;
+        }
+        // 2.提交到重建线程池，队列满时放弃，锁释放后由下一次请求重新触发
+        try {
+            rebuildExecutor.execute(() -> rebuild(key, id, dbFallback, time, unit, stat, lockKey));
+        } catch (RejectedExecutionException e) {
+            stat.rebuildRejects.increment();
+            unlock(lockKey);
+        }
+    }
+
+    private <R, ID> void rebuild(String key, ID id, Function<ID, R> dbFallback, Long time, TimeUnit unit,
+                                 CacheStats stat, String lockKey) {
+        long begin = System.nanoTime();
+        try {
+            R value = dbFallback.apply(id);
+            if (value == null) {
+                stringRedisTemplate.opsForValue().set(key, "", RedisConstants.CACHE_NULL_TTL, TimeUnit.MINUTES);
+            } else {
+                writeWithLogicalExpire(key, value, time, unit);
+            }
+            // 通知所有实例丢弃本地的旧数据
+            publishInvalidate(key);
+            stat.rebuilds.increment();
+            stat.rebuildNanos.add(System.nanoTime() - begin);
+        } catch (Exception e) {
+            stat.rebuildFailures.increment();
+            log.error("重建缓存失败, key: {}", key, e);
+        } finally {
+            unlock(lockKey);
+        }
+    }
+
+    /**
+     * 读取缓存信封，未命中返回 null，命中空值返回 NULL_VALUE
+     */
+    private RedisData read(String key, ValueType type) {
+        byte[] rawKey = key.getBytes(StandardCharsets.UTF_8);
+        return decode(key, stringRedisTemplate.execute((RedisCallback<byte[]>) connection -> connection.get(rawKey)), type);
+    }
+
+    private RedisData decode(String key, byte[] bytes, ValueType type) {
+        if (bytes == null) {
+            return null;
+        }
+        if (bytes.length == 0) {
+            return NULL_VALUE;
+        }
+        try {
+            // 按头部识别写入时使用的格式，不认识的格式（例如旧版本的缓存）当作未命中处理
+            CacheCodec reader = BINARY_CODEC.accepts(bytes) ? BINARY_CODEC : JSON_CODEC.accepts(bytes) ? JSON_CODEC : null;
+            return reader == null ? null : reader.decode(bytes, type.type, type.list);
+        } catch (Exception e) {
+            log.warn("解析缓存失败, key: {}", key, e);
+            return null;
+        }
+    }
+
+    private boolean isExpired(RedisData redisData) {
+        return redisData.getExpireTime() != null && redisData.getExpireTime().isBefore(LocalDateTime.now());
+    }
+
+    private long jitter(Long time, TimeUnit unit) {
+        long millis = unit.toMillis(time);
+        if (ttlJitter <= 0) {
+            return millis;
+        }
+        return millis + ThreadLocalRandom.current().nextLong((long) (millis * ttlJitter) + 1);
+    }
+
+    /**
+     * cache:shop:1 对应的锁是 lock:shop:1
+     */
+    private String lockKey(String key) {
+        return "lock:" + (key.startsWith("cache:") ? key.substring("cache:".length()) : key);
+    }
+
+    //尝试获取互斥锁
+    private boolean tryLock(String key) {
+        Boolean flag = stringRedisTemplate.opsForValue().setIfAbsent(key, "1", LOCK_TTL_SECONDS, TimeUnit.SECONDS);
+        return BooleanUtil.isTrue(flag);
+    }
+
+    //删除互斥锁
+    private void unlock(String key) {
+        stringRedisTemplate.delete(key);
+    }
+
+    /**
+     * 各个 keyPrefix 的命中率统计，以及本地缓存和重建线程池的状态
+     */
+    public Map<String, Map<String, Object>> getStats() {
+        Map<String, Map<String, Object>> result = new LinkedHashMap<>();
+        stats.forEach((keyPrefix, stat) -> result.put(keyPrefix, stat.toMap()));
+        if (localCache != null) {
+            Map<String, Object> local = new LinkedHashMap<>();
+            local.put("size", localCache.estimatedSize());
+            local.put("hitRate", localCache.stats().hitRate());
+            local.put("evictions", localCache.stats().evictionCount());
+            result.put("local", local);
+        }
+        Map<String, Object> rebuild = new LinkedHashMap<>();
+        rebuild.put("queueDepth", rebuildExecutor.getQueue().size());
+        rebuild.put("queueCapacity", rebuildQueueCapacity);
+        rebuild.put("activeThreads", rebuildExecutor.getActiveCount());
+        result.put("rebuild", rebuild);
+        return result;
+    }
+
+    /**
+     * 缓存值的类型：单个对象，或者元素类型为 type 的列表
+     */
+    private static class ValueType {
+        private final Class<?> type;
+        private final boolean list;
+
+        ValueType(Class<?> type, boolean list) {
+            this.type = type;
+            this.list = list;
+        }
+    }
+
+    private static class CacheStats {
+        private final LongAdder localHits = new LongAdder();
+        private final LongAdder hits = new LongAdder();
+        private final LongAdder staleHits = new LongAdder();
+        private final LongAdder nullHits = new LongAdder();
+        private final LongAdder misses = new LongAdder();
+        private final LongAdder coalesced = new LongAdder();
+        private final LongAdder loadWaitTimeouts = new LongAdder();
+        private final LongAdder loads = new LongAdder();
+        private final LongAdder loadNanos = new LongAdder();
+        private final LongAdder rebuilds = new LongAdder();
+        private final LongAdder rebuildNanos = new LongAdder();
+        private final LongAdder rebuildFailures = new LongAdder();
+        private final LongAdder rebuildRejects = new LongAdder();
+
+        Map<String, Object> toMap() {
+            long hit = localHits.sum() + hits.sum() + staleHits.sum() + nullHits.sum();
+            long total = hit + misses.sum();
+            long loadCount = loads.sum();
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("localHits", localHits.sum());
+            map.put("hits", hits.sum());
+            map.put("staleHits", staleHits.sum());
+            map.put("nullHits", nullHits.sum());
+            map.put("misses", misses.sum());
+            map.put("coalesced", coalesced.sum());
+            map.put("loadWaitTimeouts", loadWaitTimeouts.sum());
+            map.put("hitRate", total == 0 ? 0D : (double) hit / total);
+            map.put("loads", loadCount);
+            map.put("avgLoadMillis", loadCount == 0 ? 0D : loadNanos.sum() / 1e6 / loadCount);
+            long rebuildCount = rebuilds.sum();
+            map.put("rebuilds", rebuildCount);
+            map.put("avgRebuildMillis", rebuildCount == 0 ? 0D : rebuildNanos.sum() / 1e6 / rebuildCount);
+            map.put("rebuildFailures", rebuildFailures.sum());
+            map.put("rebuildRejects", rebuildRejects.sum());
+            return map;
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package com.hmdp.utils;
+
+/**
+ * 缓存信封 {@link RedisData} 的编解码器。
+ * 同一个 key 可能是任意一种格式写入的，读取时先用 {@link #accepts(byte[])} 判断格式，所以可以滚动切换写入格式
+ */
+public interface CacheCodec {
+
+    /**
+     * 编解码器名称，对应配置 hmdp.cache.codec
+     */
+    String name();
+
+    /**
+     * 判断字节是否是当前格式写入的
+     */
+    boolean accepts(byte[] bytes);
+
+    byte[] encode(RedisData redisData);
+
+    /**
+     * 解码，data 直接转换成目标类型
+     * @param type 单个对象的类型，或者列表的元素类型
+     * @param list data 是否是列表
+     * @return 格式不兼容（例如旧版本或者类结构已变化）时返回 null，当作未命中处理
+     */
+    RedisData decode(byte[] bytes, Class<?> type, boolean list);
+}
@@ -0,0 +1,19 @@
+package com.hmdp.utils;
+
+/**
+ * 缓存读取策略
+ */
+public enum CacheStrategy {
+    /**
+     * 缓存空值解决缓存穿透
+     */
+    PASS_THROUGH,
+    /**
+     * 互斥锁解决缓存击穿，未命中时只有拿到锁的线程查询数据库
+     */
+    MUTEX,
+    /**
+     * 逻辑过期解决缓存击穿，过期后先返回旧数据，再异步重建
+     */
+    LOGICAL_EXPIRE
+}
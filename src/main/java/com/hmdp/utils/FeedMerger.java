@@ -0,0 +1,110 @@
+package com.hmdp.utils;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * 把多个 feed 来源（自己的收件箱、关注的大 V 的发件箱）按时间倒序做 k 路归并，并按 (max, offset) 滚动分页。
+ * <p>
+ * 每个来源都是 ZREVRANGEBYSCORE 的结果：按 score 倒序，score 相同时按 member 字典序倒序，
+ * 归并使用同样的顺序，所以分页结果和把所有来源放进一个 ZSET 再查询是一样的。
+ * 每个来源最多需要 offset + size 条，归并的开销是 O((offset + size) * log k)。
+ * 多个来源中相同的条目（作者改回推模式期间，收件箱和发件箱中的同一篇笔记）在归并顺序中相邻，只返回一次
+ */
+public class FeedMerger {
+
+    private static final Comparator<Entry> ORDER = Comparator.comparingLong(Entry::getScore)
+            .thenComparing(Entry::getMember)
+            .reversed();
+
+    private FeedMerger() {
+    }
+
+    /**
+     * @param sources 每个来源中 score 不大于 max 的条目，按 score、member 倒序
+     * @param max     上一页返回的 minTime
+     * @param offset  上一页返回的 offset：score 等于 max 的条目中已经返回过的数量
+     * @param size    每页条数
+     */
+    public static Page merge(List<List<Entry>> sources, long max, int offset, int size) {
+        // 1.每个来源的第一条放入堆
+        PriorityQueue<Cursor> heap = new PriorityQueue<>(Math.max(1, sources.size()),
+                (a, b) -> ORDER.compare(a.current(), b.current()));
+        for (List<Entry> source : sources) {
+            if (!source.isEmpty()) {
+                heap.add(new Cursor(source));
+            }
+        }
+        // 2.依次取出最新的条目，跳过上一页已经返回的、score 等于 max 的条目
+        List<Long> ids = new ArrayList<>(size);
+        Entry last = null;
+        int skipped = 0;
+        long minTime = 0;
+        int os = 0;
+        while (!heap.isEmpty() && ids.size() < size) {
+            Cursor cursor = heap.poll();
+            Entry entry = cursor.current();
+            if (cursor.advance()) {
+                heap.add(cursor);
+            }
+            if (entry.equals(last)) {
+                continue;
+            }
+            last = entry;
+            if (entry.getScore() == max && skipped < offset) {
+                skipped++;
+                continue;
+            }
+            ids.add(Long.valueOf(entry.getMember()));
+            // 3.记录最小时间戳，以及它在本页出现的次数
+            if (entry.getScore() == minTime) {
+                os++;
+            } else {
+                minTime = entry.getScore();
+                os = 1;
+            }
+        }
+        // 整页的时间戳都和上一页的最小时间戳相同时，要跳过的数量需要累加上一页的 offset
+        if (!ids.isEmpty() && minTime == max) {
+            os += offset;
+        }
+        return new Page(ids, minTime, os);
+    }
+
+    @Data
+    @AllArgsConstructor
+    public static class Entry {
+        private String member;
+        private long score;
+    }
+
+    @Data
+    @AllArgsConstructor
+    public static class Page {
+        private List<Long> ids;
+        private long minTime;
+        private int offset;
+    }
+
+    private static class Cursor {
+        private final List<Entry> entries;
+        private int position;
+
+        Cursor(List<Entry> entries) {
+            this.entries = entries;
+        }
+
+        Entry current() {
+            return entries.get(position);
+        }
+
+        boolean advance() {
+            return ++position < entries.size();
+        }
+    }
+}
@@ -0,0 +1,278 @@
+package com.hmdp.utils;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.hmdp.entity.Follow;
+import com.hmdp.mapper.FollowMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.connection.DefaultTuple;
+import org.springframework.data.redis.connection.RedisZSetCommands;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ZSetOperations;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * 关注 feed 的推拉结合模式。
+ * <p>
+ * 粉丝数少于 push-threshold 的作者使用推模式：发布笔记后把笔记id写入每个粉丝的收件箱 feed:{userId}
+ * （ZSET，score 是发布时间戳），粉丝按 tb_follow 的 id 分批读取，每批一次 pipeline 写入。
+ * 粉丝数达到阈值的作者（大 V）使用拉模式：笔记只写入自己的发件箱 feed:out:{authorId}，并记录到大 V 集合 feed:celebrities，
+ * 读取时把收件箱和关注的大 V 的发件箱用 {@link FeedMerger} 归并，一次发布只有一次写入。
+ * <p>
+ * 推送在独立的线程池中执行，不占用请求线程。队列满时不在请求线程中推送，而是把笔记写入作者的发件箱、
+ * 把作者加入大 V 集合，粉丝读取时拉取，只多一次 pipeline 写入。
+ * 作者取消关注后或者下次发布时如果粉丝数低于阈值，先把发件箱中的笔记推送到粉丝的收件箱，再从大 V 集合中移除，改回推模式。
+ * 收件箱和发件箱都只保留最新的 inbox-size 条，限制内存
+ */
+@Slf4j
+@Component
+public class FeedPublisher {
+
+    private static final DefaultRedisScript<Long> DEMOTE_SCRIPT;
+
+    static {
+        DEMOTE_SCRIPT = new DefaultRedisScript<>();
+        DEMOTE_SCRIPT.setLocation(new ClassPathResource("feed_demote.lua"));
+        DEMOTE_SCRIPT.setResultType(Long.class);
+    }
+
+    /**
+     * 每个收件箱最多保留的笔记数
+     */
+    @Value("${hmdp.feed.inbox-size:1000}")
+    private int inboxSize;
+    /**
+     * 每批读取并推送的粉丝数
+     */
+    @Value("${hmdp.feed.fan-out.batch-size:500}")
+    private int batchSize;
+    /**
+     * 粉丝数达到这个值的作者不再推送，改为读取时拉取
+     */
+    @Value("${hmdp.feed.push-threshold:10000}")
+    private int pushThreshold;
+    @Value("${hmdp.feed.fan-out.threads:2}")
+    private int threads;
+    @Value("${hmdp.feed.fan-out.queue-capacity:1000}")
+    private int queueCapacity;
+
+    private final FollowMapper followMapper;
+    private final StringRedisTemplate stringRedisTemplate;
+
+    private ThreadPoolExecutor executor;
+
+    /**
+     * 推送给粉丝的笔记数
+     */
+    private final LongAdder pushed = new LongAdder();
+    /**
+     * 写入发件箱的笔记数，包括大 V 和队列满时退回拉模式的
+     */
+    private final LongAdder pulled = new LongAdder();
+    /**
+     * 队列满时退回拉模式的笔记数
+     */
+    private final LongAdder rejected = new LongAdder();
+    /**
+     * 从大 V 集合中移除、改回推模式的次数
+     */
+    private final LongAdder demoted = new LongAdder();
+
+    public FeedPublisher(FollowMapper followMapper, StringRedisTemplate stringRedisTemplate) {
+        this.followMapper = followMapper;
+        this.stringRedisTemplate = stringRedisTemplate;
+    }
+
+    @PostConstruct
+    private void init() {
+        AtomicInteger threadIndex = new AtomicInteger();
+        executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), r -> {
+            Thread thread = new Thread(r, "feed-fan-out-" + threadIndex.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }, new ThreadPoolExecutor.AbortPolicy());
+    }
+
+    @PreDestroy
+    private void destroy() {
+        executor.shutdown();
+    }
+
+    /**
+     * 异步把笔记推送给作者的所有粉丝，队列满时退回拉模式
+     */
+    public void publishAsync(Long authorId, Long blogId, long timestamp) {
+        try {
+            executor.execute(() -> {
+                try {
+                    publish(authorId, blogId, timestamp);
+                } catch (Exception e) {
+                    log.error("推送笔记失败, 作者: {}, 笔记: {}", authorId, blogId, e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // 不在请求线程中推送，写入发件箱，粉丝读取时拉取
+            rejected.increment();
+            log.warn("推送队列已满，笔记改为拉模式, 作者: {}, 笔记: {}", authorId, blogId);
+            try {
+                toOutbox(authorId, blogId, timestamp);
+            } catch (Exception ex) {
+                log.error("写入发件箱失败, 作者: {}, 笔记: {}", authorId, blogId, ex);
+            }
+        }
+    }
+
+    private void publish(Long authorId, Long blogId, long timestamp) {
+        // 1.大 V 只写入自己的发件箱
+        Integer followers = followMapper.selectCount(new QueryWrapper<Follow>().eq("follow_user_id", authorId));
+        if (followers != null && followers >= pushThreshold) {
+            toOutbox(authorId, blogId, timestamp);
+            return;
+        }
+        // 2.粉丝数降到阈值以下，或者之前因为队列满退回了拉模式，先把发件箱中的笔记推送给粉丝，改回推模式
+        demote(authorId);
+        // 3.推送给粉丝
+        push(authorId, Collections.singleton(new DefaultTuple(
+                blogId.toString().getBytes(StandardCharsets.UTF_8), (double) timestamp)));
+    }
+
+    /**
+     * 取消关注后调用：大 V 的粉丝数降到阈值以下时异步改回推模式，不需要等到下次发布
+     */
+    public void onUnfollow(Long authorId) {
+        if (!Boolean.TRUE.equals(stringRedisTemplate.opsForSet().isMember(
+                RedisConstants.FEED_CELEBRITY_KEY, authorId.toString()))) {
+            return;
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    Integer followers = followMapper.selectCount(new QueryWrapper<Follow>().eq("follow_user_id", authorId));
+                    if (followers == null || followers < pushThreshold) {
+                        demote(authorId);
+                    }
+                } catch (Exception e) {
+                    log.error("改回推模式失败, 作者: {}", authorId, e);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // 队列已满，下次发布时再改回推模式
+            log.debug("推送队列已满，跳过改回推模式, 作者: {}", authorId);
+        }
+    }
+
+    /**
+     * 写入作者的发件箱，并加入大 V 集合
+     */
+    private void toOutbox(Long authorId, Long blogId, long timestamp) {
+        String outbox = RedisConstants.FEED_OUTBOX_KEY + authorId;
+        stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            byte[] key = outbox.getBytes(StandardCharsets.UTF_8);
+            connection.zAdd(key, timestamp, blogId.toString().getBytes(StandardCharsets.UTF_8));
+            connection.zRemRange(key, 0, -inboxSize - 1);
+            connection.sAdd(RedisConstants.FEED_CELEBRITY_KEY.getBytes(StandardCharsets.UTF_8),
+                    authorId.toString().getBytes(StandardCharsets.UTF_8));
+            return null;
+        });
+        pulled.increment();
+    }
+
+    /**
+     * 作者改回推模式：发件箱中的笔记推送到粉丝的收件箱后，从发件箱删除，发件箱为空时移出大 V 集合。
+     * 推送期间读取时收件箱和发件箱可能有相同的笔记，由 {@link FeedMerger} 去重
+     */
+    private void demote(Long authorId) {
+        if (!Boolean.TRUE.equals(stringRedisTemplate.opsForSet().isMember(
+                RedisConstants.FEED_CELEBRITY_KEY, authorId.toString()))) {
+            return;
+        }
+        String outbox = RedisConstants.FEED_OUTBOX_KEY + authorId;
+        Set<ZSetOperations.TypedTuple<String>> entries = stringRedisTemplate.opsForZSet().rangeWithScores(outbox, 0, -1);
+        if (entries != null && !entries.isEmpty()) {
+            push(authorId, entries.stream()
+                    .map(e -> new DefaultTuple(e.getValue().getBytes(StandardCharsets.UTF_8), e.getScore()))
+                    .collect(Collectors.toSet()));
+        }
+        // 推送期间又退回拉模式写入的笔记还在发件箱中，这时作者仍然留在大 V 集合
+        List<String> args = new ArrayList<>();
+        args.add(authorId.toString());
+        if (entries != null) {
+            entries.forEach(e -> args.add(e.getValue()));
+        }
+        Long remaining = stringRedisTemplate.execute(DEMOTE_SCRIPT,
+                Arrays.asList(outbox, RedisConstants.FEED_CELEBRITY_KEY), args.toArray());
+        if (remaining != null && remaining == 0) {
+            demoted.increment();
+        }
+    }
+
+    /**
+     * 把笔记推送到作者所有粉丝的收件箱
+     */
+    private void push(Long authorId, Set<RedisZSetCommands.Tuple> entries) {
+        long begin = System.currentTimeMillis();
+        long count = 0;
+        long lastId = 0;
+        while (true) {
+            // 1.按 id 分批查询粉丝
+            List<Follow> follows = followMapper.selectList(new QueryWrapper<Follow>()
+                    .select("id", "user_id")
+                    .eq("follow_user_id", authorId)
+                    .gt("id", lastId)
+                    .orderByAsc("id")
+                    .last("limit " + batchSize));
+            // 2.一次 pipeline 写入这一批粉丝的收件箱，并删除超出长度的旧笔记
+            stringRedisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+                for (Follow follow : follows) {
+                    byte[] key = (RedisConstants.FEED_KEY + follow.getUserId()).getBytes(StandardCharsets.UTF_8);
+                    connection.zAdd(key, entries);
+                    connection.zRemRange(key, 0, -inboxSize - 1);
+                }
+                return null;
+            });
+            count += follows.size();
+            if (follows.size() < batchSize) {
+                break;
+            }
+            lastId = follows.get(follows.size() - 1).getId();
+        }
+        pushed.add(entries.size());
+        log.debug("推送笔记完成, 作者: {}, 笔记数: {}, 粉丝数: {}, 耗时: {}ms",
+                authorId, entries.size(), count, System.currentTimeMillis() - begin);
+    }
+
+    /**
+     * 推送、拉取的笔记数，队列满退回拉模式的次数，以及当前的队列长度
+     */
+    public Map<String, Object> getStats() {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("pushed", pushed.sum());
+        map.put("pulled", pulled.sum());
+        map.put("rejected", rejected.sum());
+        map.put("demoted", demoted.sum());
+        map.put("queueSize", executor.getQueue().size());
+        return map;
+    }
+}
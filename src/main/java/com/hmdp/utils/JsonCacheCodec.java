@@ -0,0 +1,42 @@
+package com.hmdp.utils;
+
+import cn.hutool.json.JSONArray;
+import cn.hutool.json.JSONObject;
+import cn.hutool.json.JSONUtil;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * JSON 格式，没有头部，兼容之前写入的所有缓存
+ */
+public class JsonCacheCodec implements CacheCodec {
+
+    public static final String NAME = "json";
+
+    @Override
+    public String name() {
+        return NAME;
+    }
+
+    @Override
+    public boolean accepts(byte[] bytes) {
+        return bytes.length > 0 && bytes[0] == '{';
+    }
+
+    @Override
+    public byte[] encode(RedisData redisData) {
+        return JSONUtil.toJsonStr(redisData).getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public RedisData decode(byte[] bytes, Class<?> type, boolean list) {
+        RedisData redisData = JSONUtil.toBean(new String(bytes, StandardCharsets.UTF_8), RedisData.class);
+        Object data = redisData.getData();
+        // 旧格式（没有信封）的缓存当作未命中处理
+        if (list ? !(data instanceof JSONArray) : !(data instanceof JSONObject)) {
+            return null;
+        }
+        redisData.setData(list ? JSONUtil.toList((JSONArray) data, type) : JSONUtil.toBean((JSONObject) data, type));
+        return redisData;
+    }
+}
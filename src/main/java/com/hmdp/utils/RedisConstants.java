@@ -6,18 +6,45 @@ public class RedisConstants {
     public static final String LOGIN_USER_KEY = "login:token:";
     public static final Long LOGIN_USER_TTL = 36000L;
     public static final String SHOP_LIST = "cache:list:";
+    public static final String SHOP_TYPE_VERSION_KEY = "cache:list:version";
 
     public static final Long CACHE_NULL_TTL = 2L;
 
     public static final Long CACHE_SHOP_TTL = 30L;
     public static final String CACHE_SHOP_KEY = "cache:shop:";
 
+    public static final String CACHE_VOUCHER_LIST_KEY = "cache:voucher:list:";
+    public static final Long CACHE_VOUCHER_LIST_TTL = 1L;
+
+    public static final String CACHE_USER_KEY = "cache:user:";
+    public static final Long CACHE_USER_TTL = 30L;
+
+    public static final String CACHE_BLOG_KEY = "cache:blog:";
+    public static final Long CACHE_BLOG_TTL = 30L;
+
+    public static final String CACHE_COMMENTS_KEY = "cache:comments:";
+    public static final Long CACHE_COMMENTS_TTL = 10L;
+    public static final String CACHE_COMMENTS_VERSION_KEY = "cache:comments:ver:";
+    public static final String CACHE_INVALIDATE_TOPIC = "cache:invalidate";
+    public static final String SHOP_BLOOM_TOPIC = "shop:bloom";
+
     public static final String LOCK_SHOP_KEY = "lock:shop:";
     public static final Long LOCK_SHOP_TTL = 10L;
 
     public static final String SECKILL_STOCK_KEY = "seckill:stock:";
+    public static final String SECKILL_ORDER_KEY = "seckill:order:";
+    public static final String SECKILL_SHARDS_KEY = "seckill:shards:";
+    public static final String SECKILL_SOLD_OUT_TOPIC = "seckill:sold-out";
     public static final String BLOG_LIKED_KEY = "blog:liked:";
+    public static final String BLOG_COUNTER_DELTA_KEY = "blog:counter:delta:";
+    public static final String BLOG_HOT_KEY = "blog:hot";
+    public static final String BLOG_HOT_EPOCH_KEY = "blog:hot:epoch";
+    public static final String BLOG_HOT_BUILT_KEY = "blog:hot:built";
+    public static final String BLOG_HOT_BUILDING_KEY = "blog:hot:building";
     public static final String FEED_KEY = "feed:";
+    public static final String FEED_OUTBOX_KEY = "feed:out:";
+    public static final String FEED_CELEBRITY_KEY = "feed:celebrities";
+    public static final String FOLLOWS_KEY = "follows:";
     public static final String SHOP_GEO_KEY = "shop:geo:";
     public static final String USER_SIGN_KEY = "sign:";
 }
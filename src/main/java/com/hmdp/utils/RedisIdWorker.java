@@ -1,12 +1,27 @@
 package com.hmdp.utils;
 
+import cn.hutool.core.lang.UUID;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.ClassPathResource;
 import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
 import org.springframework.stereotype.Component;
 
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
+@Slf4j
 @Component
 public class RedisIdWorker {
     /**
@@ -17,14 +32,132 @@ public class RedisIdWorker {
      * 序列号的位数
      */
     private static final int COUNT_BITS = 32;
+
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy:MM:dd");
+
+    /**
+     * workerId 租约的 key 前缀和有效期（秒）
+     */
+    private static final String WORKER_KEY_PREFIX = "icr:worker:";
+    private static final long WORKER_LEASE_TTL = 60L;
+    /**
+     * 距离租约过期不足这个时间时停止发号，留出时钟误差和网络延迟的余量
+     */
+    private static final long WORKER_LEASE_MARGIN_MILLIS = 10_000L;
+
+    private static final DefaultRedisScript<Long> WORKER_RENEW_SCRIPT;
+
+    static {
+        WORKER_RENEW_SCRIPT = new DefaultRedisScript<>();
+        WORKER_RENEW_SCRIPT.setLocation(new ClassPathResource("worker_renew.lua"));
+        WORKER_RENEW_SCRIPT.setResultType(Long.class);
+    }
+
+    private static final ExecutorService SEGMENT_LOADER = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "id-segment-loader");
+        thread.setDaemon(true);
+        return thread;
+    });
+
     private StringRedisTemplate stringRedisTemplate;
 
+    /**
+     * 使用号段模式的业务前缀，其余前缀每个 id 执行一次 INCR
+     */
+    @Value("${hmdp.id.segment-prefixes:}")
+    private String[] segmentPrefixes;
+    /**
+     * 每次 INCRBY 申请的号段长度
+     */
+    @Value("${hmdp.id.segment-step:1000}")
+    private long segmentStep;
+
+    /**
+     * 使用雪花算法的业务前缀，id 完全在本地生成，workerId 启动时从 Redis 租用
+     */
+    @Value("${hmdp.id.snowflake-prefixes:}")
+    private String[] snowflakePrefixes;
+
+    private Set<String> segmentPrefixSet;
+    private Set<String> snowflakePrefixSet;
+
+    /**
+     * 当前实例标示，用于 workerId 租约
+     */
+    private final String instanceId = UUID.randomUUID().toString(true);
+    private volatile SnowflakeIdGenerator snowflake;
+    /**
+     * 当前 workerId 租约可以安全使用的截止时间，按发起租用/续期请求的时间计算
+     */
+    private volatile long leaseValidUntil;
+    private ScheduledExecutorService workerRenewer;
+
+    private final ConcurrentHashMap<String, SegmentBuffer> segmentBuffers = new ConcurrentHashMap<>();
+
+    /**
+     * 当天日期的缓存，避免每次生成 id 都格式化日期
+     */
+    private volatile CachedDate cachedDate = new CachedDate(-1, null);
+
     public RedisIdWorker(StringRedisTemplate stringRedisTemplate) {
         this.stringRedisTemplate = stringRedisTemplate;
     }
 
+    @PostConstruct
+    private void init() {
+        segmentPrefixSet = new HashSet<>(Arrays.asList(segmentPrefixes));
+        snowflakePrefixSet = new HashSet<>(Arrays.asList(snowflakePrefixes));
+        if (snowflakePrefixSet.isEmpty()) {
+            return;
+        }
+        // 租用 workerId，并定期续期
+        long requestTime = System.currentTimeMillis();
+        snowflake = new SnowflakeIdGenerator(leaseWorkerId());
+        leaseValidUntil = leaseDeadline(requestTime);
+        workerRenewer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "id-worker-renewer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        workerRenewer.scheduleAtFixedRate(this::renewWorkerId,
+                WORKER_LEASE_TTL / 3, WORKER_LEASE_TTL / 3, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    private void destroy() {
+        if (workerRenewer == null) {
+            return;
+        }
+        workerRenewer.shutdownNow();
+        // 等真实时钟越过借用的毫秒再释放，之后租用这个 workerId 的实例不会生成相同的 id
+        try {
+            if (!snowflake.awaitIssuedTime(5000)) {
+                // 等不到就不删除，让租约自然过期
+                return;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        }
+        // 释放租约，只删除自己持有的
+        String key = WORKER_KEY_PREFIX + snowflake.getWorkerId();
+        if (instanceId.equals(stringRedisTemplate.opsForValue().get(key))) {
+            stringRedisTemplate.delete(key);
+        }
+    }
+
     //生成全局唯一 id
     public long nextId(String keyPrefix){
+        // 0.雪花模式直接在本地生成
+        if (snowflakePrefixSet.contains(keyPrefix)) {
+            // 租约可能已经过期并被其它实例租走，继续发号会产生重复 id，直到重新续期/租用成功；
+            // 借用的未来毫秒也不能超过租约期限
+            long validUntil = leaseValidUntil;
+            if (System.currentTimeMillis() >= validUntil) {
+                throw new IllegalStateException("workerId 租约即将过期，暂停生成 id");
+            }
+            return snowflake.nextId(validUntil);
+        }
         // 1.生成时间戳
         LocalDateTime now = LocalDateTime.now();
         long nowSecond = now.toEpochSecond(ZoneOffset.UTC);
@@ -32,11 +165,173 @@ public class RedisIdWorker {
 
         // 2.生成序列号
         // 2.1.获取当前日期，精确到天
-        String date = now.format(DateTimeFormatter.ofPattern("yyyy:MM:dd"));
-        // 2.2.自增长，返回当前增长到的值
-        long count = stringRedisTemplate.opsForValue().increment("icr:" + keyPrefix + ":" + date);
+        String date = currentDate(now, nowSecond);
+        // 2.2.号段模式在本地分配，否则自增长，返回当前增长到的值
+        long count = isSegmentPrefix(keyPrefix)
+                ? segmentBuffers.computeIfAbsent(keyPrefix, SegmentBuffer::new).nextCount(date)
+                : stringRedisTemplate.opsForValue().increment("icr:" + keyPrefix + ":" + date);
 
         // 3.拼接并返回
         return timestamp << COUNT_BITS | count;
     }
+
+    private long leaseWorkerId() {
+        // 从随机位置开始找，减少多个实例同时启动时的冲突
+        long start = ThreadLocalRandom.current().nextLong(SnowflakeIdGenerator.MAX_WORKER_ID + 1);
+        for (long i = 0; i <= SnowflakeIdGenerator.MAX_WORKER_ID; i++) {
+            long workerId = (start + i) % (SnowflakeIdGenerator.MAX_WORKER_ID + 1);
+            Boolean success = stringRedisTemplate.opsForValue()
+                    .setIfAbsent(WORKER_KEY_PREFIX + workerId, instanceId, WORKER_LEASE_TTL, TimeUnit.SECONDS);
+            if (Boolean.TRUE.equals(success)) {
+                log.info("租用 workerId: {}", workerId);
+                return workerId;
+            }
+        }
+        throw new IllegalStateException("没有可用的 workerId");
+    }
+
+    private void renewWorkerId() {
+        try {
+            long requestTime = System.currentTimeMillis();
+            Long renewed = stringRedisTemplate.execute(
+                    WORKER_RENEW_SCRIPT,
+                    Collections.singletonList(WORKER_KEY_PREFIX + snowflake.getWorkerId()),
+                    instanceId, String.valueOf(WORKER_LEASE_TTL));
+            if (renewed != null && renewed == 1) {
+                leaseValidUntil = leaseDeadline(requestTime);
+                return;
+            }
+            // 租约已经丢失（例如长时间与 Redis 断开），先停止发号，再重新租用一个 workerId
+            log.warn("workerId {} 租约丢失，重新租用", snowflake.getWorkerId());
+            leaseValidUntil = 0;
+            requestTime = System.currentTimeMillis();
+            snowflake = new SnowflakeIdGenerator(leaseWorkerId());
+            leaseValidUntil = leaseDeadline(requestTime);
+        } catch (Exception e) {
+            log.error("续期 workerId 失败", e);
+        }
+    }
+
+    private long leaseDeadline(long requestTime) {
+        return requestTime + TimeUnit.SECONDS.toMillis(WORKER_LEASE_TTL) - WORKER_LEASE_MARGIN_MILLIS;
+    }
+
+    private boolean isSegmentPrefix(String keyPrefix) {
+        return segmentPrefixSet.contains(keyPrefix);
+    }
+
+    private String currentDate(LocalDateTime now, long nowSecond) {
+        long epochDay = nowSecond / 86400;
+        CachedDate cached = cachedDate;
+        if (cached.epochDay != epochDay) {
+            cached = new CachedDate(epochDay, now.format(DATE_FORMATTER));
+            cachedDate = cached;
+        }
+        return cached.date;
+    }
+
+    private static class CachedDate {
+        private final long epochDay;
+        private final String date;
+
+        CachedDate(long epochDay, String date) {
+            this.epochDay = epochDay;
+            this.date = date;
+        }
+    }
+
+    /**
+     * 一个号段：[cursor, max] 之间的序列号归当前实例独占
+     */
+    private static class Segment {
+        private final String date;
+        private final long max;
+        private final AtomicLong cursor;
+
+        Segment(String date, long start, long max) {
+            this.date = date;
+            this.max = max;
+            this.cursor = new AtomicLong(start);
+        }
+    }
+
+    /**
+     * 双号段缓冲：当前号段用 CAS 分配，剩余不足 1/5 时异步预取下一个号段，用完后直接切换
+     */
+    private class SegmentBuffer {
+        private final String keyPrefix;
+        private volatile Segment current;
+        private volatile Segment next;
+        private final AtomicBoolean loading = new AtomicBoolean(false);
+
+        SegmentBuffer(String keyPrefix) {
+            this.keyPrefix = keyPrefix;
+        }
+
+        long nextCount(String date) {
+            while (true) {
+                Segment segment = current;
+                if (segment != null && segment.date.equals(date)) {
+                    long count = segment.cursor.getAndIncrement();
+                    if (count <= segment.max) {
+                        // 用 <= 而不是 ==：并发下某个线程可能错过恰好等于阈值的那个值，由 loading 保证只预取一次
+                        if (segment.max - count <= segmentStep / 5) {
+                            preload(date);
+                        }
+                        return count;
+                    }
+                }
+                switchSegment(date, segment);
+            }
+        }
+
+        private synchronized void switchSegment(String date, Segment old) {
+            if (current != old) {
+                // 其它线程已经切换过了
+                return;
+            }
+            Segment candidate = next;
+            next = null;
+            if (candidate == null || !candidate.date.equals(date)) {
+                // 预取还没完成或者跨天了，同步申请
+                candidate = allocate(date);
+            }
+            current = candidate;
+        }
+
+        private void preload(String date) {
+            if (next != null || !loading.compareAndSet(false, true)) {
+                return;
+            }
+            SEGMENT_LOADER.execute(() -> {
+                try {
+                    synchronized (this) {
+                        // 拿到 loading 之前，上一次预取可能刚刚完成
+                        if (next != null) {
+                            return;
+                        }
+                    }
+                    Segment segment = allocate(date);
+                    synchronized (this) {
+                        if (next == null) {
+                            next = segment;
+                        }
+                    }
+                } catch (Exception e) {
+                    log.warn("预取号段失败, keyPrefix: {}", keyPrefix, e);
+                } finally {
+                    loading.set(false);
+                }
+            });
+        }
+
+        private Segment allocate(String date) {
+            // INCRBY 返回号段的最大值，与 INCR 模式共用同一个 key，两种模式混用也不会重复
+            Long max = stringRedisTemplate.opsForValue().increment("icr:" + keyPrefix + ":" + date, segmentStep);
+            if (max == null) {
+                throw new IllegalStateException("申请号段失败, keyPrefix: " + keyPrefix);
+            }
+            return new Segment(date, max - segmentStep + 1, max);
+        }
+    }
 }
@@ -0,0 +1,57 @@
+package com.hmdp.utils;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * 游标分页（keyset pagination）的游标：上一页最后一条记录的排序值和 id，编码成不透明的字符串返回给前端。
+ * 下一页按 (排序值, id) 继续向后查询，不需要 OFFSET 和 COUNT，第 1000 页和第 1 页的开销相同
+ */
+public class ScrollCursor {
+
+    private final long sortKey;
+    private final long id;
+
+    public ScrollCursor(long sortKey, long id) {
+        this.sortKey = sortKey;
+        this.id = id;
+    }
+
+    public long getSortKey() {
+        return sortKey;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public String encode() {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString((sortKey + "," + id).getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @return 空字符串表示第一页，返回 null；格式错误时抛出 {@link InvalidCursorException}，由全局异常处理返回 400
+     */
+    public static ScrollCursor decode(String cursor) {
+        if (cursor == null || cursor.isEmpty()) {
+            return null;
+        }
+        try {
+            String s = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int index = s.indexOf(',');
+            return new ScrollCursor(Long.parseLong(s.substring(0, index)), Long.parseLong(s.substring(index + 1)));
+        } catch (RuntimeException e) {
+            throw new InvalidCursorException(cursor, e);
+        }
+    }
+
+    /**
+     * 前端传入的游标格式错误
+     */
+    public static class InvalidCursorException extends IllegalArgumentException {
+        public InvalidCursorException(String cursor, Throwable cause) {
+            super("invalid cursor: " + cursor, cause);
+        }
+    }
+}
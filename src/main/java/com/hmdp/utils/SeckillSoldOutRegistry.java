@@ -0,0 +1,99 @@
+package com.hmdp.utils;
+
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RTopic;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 本地售罄标记，秒杀券售罄后直接在 JVM 内拒绝请求，不再访问 Redis。
+ * 售罄/补货通过 Redis pub/sub 广播到所有实例；标记带有有效期，过期后放行一次请求到 Redis 重新确认库存，
+ * 避免补货消息与售罄消息乱序时一直误判为售罄
+ */
+@Slf4j
+@Component
+public class SeckillSoldOutRegistry {
+
+    private static final String SOLD_OUT = "sold-out";
+    private static final String RESTOCK = "restock";
+
+    /**
+     * 售罄标记的有效期
+     */
+    @Value("${hmdp.seckill.sold-out-ttl-ms:5000}")
+    private long soldOutTtlMillis;
+
+    /**
+     * voucherId -> 标记失效的时间戳
+     */
+    private final ConcurrentHashMap<Long, Long> soldOut = new ConcurrentHashMap<>();
+
+    private final RedissonClient redissonClient;
+
+    private RTopic topic;
+
+    public SeckillSoldOutRegistry(RedissonClient redissonClient) {
+        this.redissonClient = redissonClient;
+    }
+
+    @PostConstruct
+    private void init() {
+        topic = redissonClient.getTopic(RedisConstants.SECKILL_SOLD_OUT_TOPIC, StringCodec.INSTANCE);
+        topic.addListener(String.class, (channel, msg) -> onMessage(msg));
+    }
+
+    /**
+     * 判断优惠券是否已经售罄，标记过期时返回 false，让请求去 Redis 重新确认
+     */
+    public boolean isSoldOut(Long voucherId) {
+        Long expireAt = soldOut.get(voucherId);
+        if (expireAt == null) {
+            return false;
+        }
+        if (expireAt > System.currentTimeMillis()) {
+            return true;
+        }
+        soldOut.remove(voucherId, expireAt);
+        return false;
+    }
+
+    /**
+     * 标记售罄，本地首次标记时广播给其它实例
+     */
+    public void markSoldOut(Long voucherId) {
+        Long old = soldOut.put(voucherId, System.currentTimeMillis() + soldOutTtlMillis);
+        if (old == null) {
+            topic.publish(SOLD_OUT + ":" + voucherId);
+        }
+    }
+
+    /**
+     * 补货后清除所有实例的售罄标记
+     */
+    public void reset(Long voucherId) {
+        soldOut.remove(voucherId);
+        topic.publish(RESTOCK + ":" + voucherId);
+    }
+
+    private void onMessage(String msg) {
+        int index = msg.indexOf(':');
+        if (index < 0) {
+            return;
+        }
+        try {
+            Long voucherId = Long.valueOf(msg.substring(index + 1));
+            if (SOLD_OUT.equals(msg.substring(0, index))) {
+                soldOut.put(voucherId, System.currentTimeMillis() + soldOutTtlMillis);
+            } else {
+                soldOut.remove(voucherId);
+            }
+        } catch (NumberFormatException e) {
+            log.warn("无效的售罄消息: {}", msg);
+        }
+    }
+}
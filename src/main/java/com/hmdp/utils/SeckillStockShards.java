@@ -0,0 +1,171 @@
+package com.hmdp.utils;
+
+import cn.hutool.core.util.StrUtil;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 秒杀相关 key 的路由：订单 stream 分区、库存分片。
+ * 库存分片 i 的库存 key、下单用户集合和分区 i % partitions 的 stream 使用同一个 hash tag，
+ * 在 Redis Cluster 下落在同一个 slot，下单脚本可以原子地扣库存、去重和发消息。
+ * 未分片的秒杀券只有一个库存 key，按 voucherId 固定到一个分区，与该分区的 stream 使用同一个 hash tag
+ */
+@Component
+public class SeckillStockShards {
+
+    private static final String QUEUE_NAME = "stream.orders";
+
+    /**
+     * 订单 stream 分区数
+     */
+    @Value("${hmdp.seckill.order.partitions:1}")
+    private int partitions;
+    /**
+     * 库存分片数，1 表示不分片；实际分片数会向上取整为 partitions 的整数倍
+     */
+    @Value("${hmdp.seckill.stock-shards:1}")
+    private int stockShards;
+    /**
+     * 库存达到该值才分片，库存太少时分片只会让兄弟分片回退变多
+     */
+    @Value("${hmdp.seckill.stock-shard-threshold:1000}")
+    private int shardThreshold;
+
+    private final StringRedisTemplate stringRedisTemplate;
+
+    /**
+     * voucherId -> 分片数，分片数在创建秒杀券时确定，之后不再变化
+     */
+    private final ConcurrentHashMap<Long, Integer> shardCounts = new ConcurrentHashMap<>();
+
+    public SeckillStockShards(StringRedisTemplate stringRedisTemplate) {
+        this.stringRedisTemplate = stringRedisTemplate;
+    }
+
+    public int getPartitions() {
+        return partitions;
+    }
+
+    /**
+     * 分区 stream 的 key，只有一个分区时沿用原来的 stream.orders
+     */
+    public String streamKey(int partition) {
+        return partitions <= 1 ? QUEUE_NAME : QUEUE_NAME + ":{" + partition + "}";
+    }
+
+    /**
+     * 分片的秒杀券按用户分区，同一用户的订单总是落在同一个分区
+     */
+    public String orderStreamKey(Long userId) {
+        return streamKey(Math.floorMod(userId, partitions));
+    }
+
+    /**
+     * 用户所在的库存分片，分片数是 partitions 的整数倍，所以 homeShard % partitions 就是用户的订单分区
+     */
+    public int homeShard(Long userId, int shards) {
+        return Math.floorMod(userId, shards);
+    }
+
+    /**
+     * 未分片的秒杀券所在的订单分区，同一张券的订单总是落在同一个分区
+     */
+    public String voucherStreamKey(Long voucherId) {
+        return streamKey(Math.floorMod(voucherId, partitions));
+    }
+
+    /**
+     * 未分片的秒杀券的库存 key
+     */
+    public String stockKey(Long voucherId) {
+        return RedisConstants.SECKILL_STOCK_KEY + voucherId + ":" + partitionTag(Math.floorMod(voucherId, partitions));
+    }
+
+    /**
+     * 未分片的秒杀券的下单用户集合
+     */
+    public String orderKey(Long voucherId) {
+        return RedisConstants.SECKILL_ORDER_KEY + voucherId + ":" + partitionTag(Math.floorMod(voucherId, partitions));
+    }
+
+    public String stockKey(Long voucherId, int shard) {
+        return RedisConstants.SECKILL_STOCK_KEY + voucherId + ":" + slotTag(shard) + ":" + shard;
+    }
+
+    public String orderKey(Long voucherId, int shard) {
+        return RedisConstants.SECKILL_ORDER_KEY + voucherId + ":" + slotTag(shard) + ":" + shard;
+    }
+
+    /**
+     * 与分区 stream 相同的 hash tag；只有一个分区时 {stream.orders} 与 stream.orders 的 slot 相同
+     */
+    private String slotTag(int shard) {
+        return partitionTag(shard % partitions);
+    }
+
+    private String partitionTag(int partition) {
+        return "{" + (partitions <= 1 ? QUEUE_NAME : String.valueOf(partition)) + "}";
+    }
+
+    /**
+     * 查询优惠券的库存分片数，未分片返回 1
+     */
+    public int shardsOf(Long voucherId) {
+        Integer shards = shardCounts.get(voucherId);
+        if (shards != null) {
+            return shards;
+        }
+        String value = stringRedisTemplate.opsForValue().get(RedisConstants.SECKILL_SHARDS_KEY + voucherId);
+        if (StrUtil.isNotBlank(value)) {
+            shards = Integer.valueOf(value);
+        } else if (Boolean.TRUE.equals(stringRedisTemplate.hasKey(stockKey(voucherId)))) {
+            shards = 1;
+        } else {
+            // 秒杀券还不存在，不缓存
+            return 1;
+        }
+        shardCounts.put(voucherId, shards);
+        return shards;
+    }
+
+    /**
+     * 初始化秒杀库存，库存足够大时均分到各个分片
+     */
+    public void initStock(Long voucherId, int stock) {
+        int shards = 1;
+        if (stockShards > 1 && stock >= shardThreshold) {
+            shards = (stockShards + partitions - 1) / partitions * partitions;
+        }
+        if (shards <= 1) {
+            stringRedisTemplate.opsForValue().set(stockKey(voucherId), String.valueOf(stock));
+            shardCounts.put(voucherId, 1);
+            return;
+        }
+        for (int i = 0; i < shards; i++) {
+            int shardStock = stock / shards + (i < stock % shards ? 1 : 0);
+            stringRedisTemplate.opsForValue().set(stockKey(voucherId, i), String.valueOf(shardStock));
+        }
+        stringRedisTemplate.opsForValue().set(RedisConstants.SECKILL_SHARDS_KEY + voucherId, String.valueOf(shards));
+        shardCounts.put(voucherId, shards);
+    }
+
+    /**
+     * 补货，分片时均分到各个分片
+     */
+    public void addStock(Long voucherId, int stock) {
+        int shards = shardsOf(voucherId);
+        if (shards <= 1) {
+            stringRedisTemplate.opsForValue().increment(stockKey(voucherId), stock);
+            return;
+        }
+        for (int i = 0; i < shards; i++) {
+            int shardStock = stock / shards + (i < stock % shards ? 1 : 0);
+            if (shardStock > 0) {
+                stringRedisTemplate.opsForValue().increment(stockKey(voucherId, i), shardStock);
+            }
+        }
+    }
+}
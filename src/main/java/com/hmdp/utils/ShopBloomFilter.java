@@ -0,0 +1,149 @@
+package com.hmdp.utils;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.hmdp.entity.Shop;
+import com.hmdp.mapper.ShopMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.redisson.api.RTopic;
+import org.redisson.api.RedissonClient;
+import org.redisson.client.codec.StringCodec;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 店铺 id 的本地布隆过滤器，在访问缓存和数据库之前拦截不存在的 id，防止缓存穿透。
+ * 启动时从 tb_shop 全量构建并定期重建（清理已删除的店铺）；新增店铺通过 Redis pub/sub 通知所有实例
+ */
+@Slf4j
+@Component
+public class ShopBloomFilter {
+
+    private static final int BUILD_BATCH_SIZE = 1000;
+
+    /**
+     * 预计的店铺数量，超过后误判率会升高，需要调大
+     */
+    @Value("${hmdp.shop.bloom.expected-insertions:1000000}")
+    private long expectedInsertions;
+    /**
+     * 期望的误判率
+     */
+    @Value("${hmdp.shop.bloom.fpp:0.01}")
+    private double fpp;
+
+    private final ShopMapper shopMapper;
+    private final RedissonClient redissonClient;
+
+    private RTopic topic;
+
+    private volatile BloomFilter filter;
+    /**
+     * 重建过程中新增的 id 同时写入正在构建的过滤器
+     */
+    private volatile BloomFilter building;
+
+    private volatile long size;
+    private volatile long lastBuildMillis;
+    private final LongAdder rejects = new LongAdder();
+
+    public ShopBloomFilter(ShopMapper shopMapper, RedissonClient redissonClient) {
+        this.shopMapper = shopMapper;
+        this.redissonClient = redissonClient;
+    }
+
+    @PostConstruct
+    private void init() {
+        topic = redissonClient.getTopic(RedisConstants.SHOP_BLOOM_TOPIC, StringCodec.INSTANCE);
+        topic.addListener(String.class, (channel, msg) -> {
+            try {
+                putLocal(Long.parseLong(msg));
+            } catch (NumberFormatException e) {
+                log.warn("无效的店铺 id 消息: {}", msg);
+            }
+        });
+        rebuild();
+    }
+
+    /**
+     * 定期全量重建
+     */
+    @Scheduled(initialDelayString = "${hmdp.shop.bloom.rebuild-interval-ms:3600000}",
+            fixedDelayString = "${hmdp.shop.bloom.rebuild-interval-ms:3600000}")
+    public void rebuild() {
+        long begin = System.currentTimeMillis();
+        BloomFilter newFilter = new BloomFilter(expectedInsertions, fpp);
+        building = newFilter;
+        // 按 id 分批扫描，每次只查 id
+        long count = 0;
+        long lastId = 0;
+        while (true) {
+            List<Object> ids = shopMapper.selectObjs(new QueryWrapper<Shop>()
+                    .select("id")
+                    .gt("id", lastId)
+                    .orderByAsc("id")
+                    .last("limit " + BUILD_BATCH_SIZE));
+            for (Object id : ids) {
+                newFilter.put(((Number) id).longValue());
+            }
+            count += ids.size();
+            if (ids.size() < BUILD_BATCH_SIZE) {
+                break;
+            }
+            lastId = ((Number) ids.get(ids.size() - 1)).longValue();
+        }
+        filter = newFilter;
+        building = null;
+        size = count;
+        lastBuildMillis = System.currentTimeMillis() - begin;
+        log.info("店铺布隆过滤器构建完成, 店铺数: {}, 耗时: {}ms", count, lastBuildMillis);
+    }
+
+    /**
+     * 判断店铺 id 是否可能存在，返回 false 时一定不存在
+     */
+    public boolean mightContain(Long id) {
+        if (id != null && filter.mightContain(id)) {
+            return true;
+        }
+        rejects.increment();
+        return false;
+    }
+
+    /**
+     * 新增店铺后调用，通知所有实例
+     */
+    public void put(Long id) {
+        putLocal(id);
+        topic.publish(String.valueOf(id));
+    }
+
+    private void putLocal(long id) {
+        // 先读 building 再读 filter，保证与重建并发时至少写入新的过滤器
+        BloomFilter b = building;
+        filter.put(id);
+        if (b != null) {
+            b.put(id);
+        }
+    }
+
+    public Map<String, Object> getStats() {
+        BloomFilter current = filter;
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("expectedInsertions", expectedInsertions);
+        map.put("fpp", fpp);
+        map.put("bitSize", current.getBitSize());
+        map.put("hashFunctions", current.getHashFunctions());
+        map.put("size", size);
+        map.put("expectedFpp", current.expectedFpp());
+        map.put("rejects", rejects.sum());
+        map.put("lastBuildMillis", lastBuildMillis);
+        return map;
+    }
+}
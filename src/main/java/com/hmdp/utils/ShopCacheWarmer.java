@@ -0,0 +1,202 @@
+package com.hmdp.utils;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.hmdp.entity.Shop;
+import com.hmdp.mapper.ShopMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 店铺缓存预热：读取配置的热点店铺，或者按销量取前 top-n 家店铺，以逻辑过期的格式分批 pipeline 写入 Redis。
+ * 逻辑过期的 key 只有很长的兜底 TTL，所以默认只预热有限的热点集合，top-n 为 0 时才按 id 分页预热全部店铺。
+ * 启动时、定时任务、管理接口都可以触发，同一时间只有一个预热任务在运行。
+ * 启动时最多等待 startup-budget-ms，超时后应用照常启动，预热在后台继续
+ */
+@Slf4j
+@Component
+public class ShopCacheWarmer implements ApplicationRunner {
+
+    @Value("${hmdp.cache.warm-up.enabled:true}")
+    private boolean enabled;
+    /**
+     * 每批读取并写入的店铺数
+     */
+    @Value("${hmdp.cache.warm-up.page-size:500}")
+    private int pageSize;
+    /**
+     * 热点店铺 id，为空时按销量取前 topN 家店铺
+     */
+    @Value("${hmdp.cache.warm-up.hot-ids:}")
+    private Long[] hotIds;
+    /**
+     * 没有配置热点店铺时，预热销量最高的店铺数，0 表示预热全部店铺
+     */
+    @Value("${hmdp.cache.warm-up.top-n:1000}")
+    private int topN;
+    /**
+     * 启动时最多阻塞的时间
+     */
+    @Value("${hmdp.cache.warm-up.startup-budget-ms:5000}")
+    private long startupBudgetMillis;
+
+    private final ShopMapper shopMapper;
+    private final CacheClient cacheClient;
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "shop-cache-warmer");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicBoolean running = new AtomicBoolean(false);
+
+    private volatile String trigger;
+    private volatile long total;
+    private volatile long warmed;
+    private volatile long startTime;
+    private volatile long endTime;
+
+    public ShopCacheWarmer(ShopMapper shopMapper, CacheClient cacheClient) {
+        this.shopMapper = shopMapper;
+        this.cacheClient = cacheClient;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!enabled) {
+            return;
+        }
+        CompletableFuture<Void> future = warmUpAsync("startup");
+        if (future == null) {
+            return;
+        }
+        try {
+            future.get(startupBudgetMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            log.info("店铺缓存预热超过启动等待时间 {}ms，转为后台继续, 进度: {}/{}", startupBudgetMillis, warmed, total);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            // 失败已经在预热线程中记录
+        }
+    }
+
+    /**
+     * 定时预热，例如在高峰或活动开始前执行
+     */
+    @Scheduled(cron = "${hmdp.cache.warm-up.cron:-}")
+    public void scheduledWarmUp() {
+        if (enabled) {
+            warmUpAsync("schedule");
+        }
+    }
+
+    @PreDestroy
+    private void destroy() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * 提交一次预热任务
+     * @return 已经有预热任务在运行时返回 null
+     */
+    public CompletableFuture<Void> warmUpAsync(String trigger) {
+        if (!running.compareAndSet(false, true)) {
+            return null;
+        }
+        this.trigger = trigger;
+        return CompletableFuture.runAsync(() -> {
+            try {
+                warmUp();
+            } catch (Exception e) {
+                log.error("店铺缓存预热失败, 进度: {}/{}", warmed, total, e);
+                throw e;
+            } finally {
+                endTime = System.currentTimeMillis();
+                running.set(false);
+            }
+        }, executor);
+    }
+
+    private void warmUp() {
+        startTime = System.currentTimeMillis();
+        endTime = 0;
+        warmed = 0;
+        if (hotIds.length > 0) {
+            // 只预热热点店铺
+            total = hotIds.length;
+            for (int from = 0; from < hotIds.length; from += pageSize) {
+                List<Long> ids = Arrays.asList(hotIds).subList(from, Math.min(from + pageSize, hotIds.length));
+                write(shopMapper.selectBatchIds(ids));
+            }
+        } else if (topN > 0) {
+            // 预热销量最高的 topN 家店铺
+            List<Shop> shops = shopMapper.selectList(new QueryWrapper<Shop>()
+                    .orderByDesc("sold")
+                    .orderByAsc("id")
+                    .last("limit " + topN));
+            total = shops.size();
+            for (int from = 0; from < shops.size(); from += pageSize) {
+                write(shops.subList(from, Math.min(from + pageSize, shops.size())));
+            }
+        } else {
+            // 按 id 分页读取全部店铺
+            total = shopMapper.selectCount(null);
+            long lastId = 0;
+            while (true) {
+                List<Shop> shops = shopMapper.selectList(new QueryWrapper<Shop>()
+                        .gt("id", lastId)
+                        .orderByAsc("id")
+                        .last("limit " + pageSize));
+                write(shops);
+                if (shops.size() < pageSize) {
+                    break;
+                }
+                lastId = shops.get(shops.size() - 1).getId();
+            }
+        }
+        log.info("店铺缓存预热完成, 触发方式: {}, 店铺数: {}, 耗时: {}ms",
+                trigger, warmed, System.currentTimeMillis() - startTime);
+    }
+
+    private void write(List<Shop> shops) {
+        Map<String, Shop> values = new LinkedHashMap<>(shops.size() * 4 / 3 + 1);
+        for (Shop shop : shops) {
+            values.put(RedisConstants.CACHE_SHOP_KEY + shop.getId(), shop);
+        }
+        cacheClient.setWithLogicalExpire(values, RedisConstants.CACHE_SHOP_TTL, TimeUnit.MINUTES);
+        warmed += shops.size();
+    }
+
+    /**
+     * 最近一次预热的进度和吞吐量
+     */
+    public Map<String, Object> getProgress() {
+        long end = running.get() || endTime == 0 ? System.currentTimeMillis() : endTime;
+        long elapsed = startTime == 0 ? 0 : end - startTime;
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("running", running.get());
+        map.put("trigger", trigger);
+        map.put("total", total);
+        map.put("warmed", warmed);
+        map.put("elapsedMillis", elapsed);
+        map.put("shopsPerSecond", elapsed == 0 ? 0D : warmed * 1000D / elapsed);
+        return map;
+    }
+}
@@ -0,0 +1,134 @@
+package com.hmdp.utils;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.hmdp.entity.Shop;
+import com.hmdp.mapper.ShopMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.data.geo.Circle;
+import org.springframework.data.geo.Distance;
+import org.springframework.data.geo.GeoResult;
+import org.springframework.data.geo.GeoResults;
+import org.springframework.data.geo.Point;
+import org.springframework.data.redis.connection.RedisGeoCommands;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+
+/**
+ * 店铺 GEO 索引，每个店铺类型一个 key：shop:geo:{typeId}，member 是店铺 id。
+ * 启动时在后台从 tb_shop 分批加载（GEOADD 是幂等的），新增、修改店铺时同步更新
+ */
+@Slf4j
+@Component
+public class ShopGeoIndex implements ApplicationRunner {
+
+    private static final int LOAD_BATCH_SIZE = 1000;
+
+    @Value("${hmdp.shop.geo.load-on-startup:true}")
+    private boolean loadOnStartup;
+    /**
+     * 附近店铺的搜索半径
+     */
+    @Value("${hmdp.shop.geo.radius-meters:5000}")
+    private double radiusMeters;
+
+    private final ShopMapper shopMapper;
+    private final StringRedisTemplate stringRedisTemplate;
+
+    public ShopGeoIndex(ShopMapper shopMapper, StringRedisTemplate stringRedisTemplate) {
+        this.shopMapper = shopMapper;
+        this.stringRedisTemplate = stringRedisTemplate;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (loadOnStartup) {
+            CompletableFuture.runAsync(this::load).exceptionally(e -> {
+                log.error("加载店铺 GEO 索引失败", e);
+                return null;
+            });
+        }
+    }
+
+    /**
+     * 按 id 分批扫描 tb_shop，按类型分组写入
+     */
+    public void load() {
+        long begin = System.currentTimeMillis();
+        long count = 0;
+        long lastId = 0;
+        while (true) {
+            List<Shop> shops = shopMapper.selectList(new QueryWrapper<Shop>()
+                    .select("id", "type_id", "x", "y")
+                    .gt("id", lastId)
+                    .orderByAsc("id")
+                    .last("limit " + LOAD_BATCH_SIZE));
+            Map<Long, List<Shop>> byType = shops.stream()
+                    .filter(shop -> shop.getTypeId() != null && shop.getX() != null && shop.getY() != null)
+                    .collect(Collectors.groupingBy(Shop::getTypeId));
+            byType.forEach((typeId, list) -> {
+                List<RedisGeoCommands.GeoLocation<String>> locations = new ArrayList<>(list.size());
+                for (Shop shop : list) {
+                    locations.add(new RedisGeoCommands.GeoLocation<>(
+                            shop.getId().toString(), new Point(shop.getX(), shop.getY())));
+                }
+                stringRedisTemplate.opsForGeo().add(RedisConstants.SHOP_GEO_KEY + typeId, locations);
+            });
+            count += shops.size();
+            if (shops.size() < LOAD_BATCH_SIZE) {
+                break;
+            }
+            lastId = shops.get(shops.size() - 1).getId();
+        }
+        log.info("店铺 GEO 索引加载完成, 店铺数: {}, 耗时: {}ms", count, System.currentTimeMillis() - begin);
+    }
+
+    /**
+     * 新增或修改店铺后调用
+     * @param old 修改前的店铺，新增时为 null；类型变化时从旧类型的索引中删除
+     */
+    public void update(Shop old, Shop shop) {
+        if (old != null && old.getTypeId() != null && !old.getTypeId().equals(shop.getTypeId())) {
+            stringRedisTemplate.opsForGeo().remove(RedisConstants.SHOP_GEO_KEY + old.getTypeId(), old.getId().toString());
+        }
+        if (shop.getTypeId() == null || shop.getX() == null || shop.getY() == null) {
+            return;
+        }
+        stringRedisTemplate.opsForGeo().add(RedisConstants.SHOP_GEO_KEY + shop.getTypeId(),
+                new Point(shop.getX(), shop.getY()), shop.getId().toString());
+    }
+
+    /**
+     * 删除店铺后调用
+     */
+    public void remove(Shop shop) {
+        if (shop.getTypeId() != null) {
+            stringRedisTemplate.opsForGeo().remove(RedisConstants.SHOP_GEO_KEY + shop.getTypeId(), shop.getId().toString());
+        }
+    }
+
+    /**
+     * 按距离由近到远查询 [from, end) 范围内的店铺
+     * @return 店铺 id 和距离（米）
+     */
+    public List<GeoResult<RedisGeoCommands.GeoLocation<String>>> search(Long typeId, Double x, Double y, int from, int end) {
+        // Redis 6.2 的 GEOSEARCH 在当前的 spring-data-redis 版本中不可用，GEORADIUS 的语义相同
+        GeoResults<RedisGeoCommands.GeoLocation<String>> results = stringRedisTemplate.opsForGeo().radius(
+                RedisConstants.SHOP_GEO_KEY + typeId,
+                new Circle(new Point(x, y), new Distance(radiusMeters)),
+                RedisGeoCommands.GeoRadiusCommandArgs.newGeoRadiusArgs().includeDistance().sortAscending().limit(end));
+        if (results == null || results.getContent().size() <= from) {
+            return Collections.emptyList();
+        }
+        return results.getContent().subList(from, results.getContent().size());
+    }
+}
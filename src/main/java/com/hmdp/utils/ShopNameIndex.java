@@ -0,0 +1,333 @@
+package com.hmdp.utils;
+
+import com.baomidou.mybatisplus.core.conditions.query.QueryWrapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.hmdp.entity.Shop;
+import com.hmdp.mapper.ShopMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * 店铺名称的本地 n-gram 倒排索引，代替 LIKE '%name%' 的全表扫描。
+ * <p>
+ * 名称转小写，非字母数字的字符作为分隔符，每一段按字符（码点）切出 1-gram 和 2-gram，中文按字切分，不需要分词。
+ * 查询时取关键字所有 2-gram 的倒排列表求交集（只有一个字时用 1-gram），再用原名称校验是否连续包含，
+ * 耗时只和倒排列表长度有关，与店铺总数无关。
+ * <p>
+ * 启动时在后台从 tb_shop 构建，构建完成前 {@link #isReady()} 返回 false，调用方应退回数据库查询
+ */
+@Slf4j
+@Component
+public class ShopNameIndex implements ApplicationRunner {
+
+    private static final int BUILD_BATCH_SIZE = 1000;
+
+    private final ShopMapper shopMapper;
+
+    private volatile Index index;
+    /**
+     * 构建完成前新增、修改、删除的店铺，构建完成后按顺序补上，删除的店铺名称为 null
+     */
+    private final Map<Long, String> pending = new LinkedHashMap<>();
+    /**
+     * 偏移分页的检查点：索引版本:关键字 -> 偏移量 -> 该偏移量之前最后一个匹配的 id，
+     * 翻页时从最近的检查点继续向后查，不需要从头跳过 from 个结果
+     */
+    private final Cache<String, ConcurrentSkipListMap<Integer, Long>> checkpoints = Caffeine.newBuilder()
+            .maximumSize(1024)
+            .build();
+    /**
+     * 每次修改索引后递增，旧版本的检查点不再命中
+     */
+    private volatile long version;
+
+    public ShopNameIndex(ShopMapper shopMapper) {
+        this.shopMapper = shopMapper;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        CompletableFuture.runAsync(this::build).exceptionally(e -> {
+            log.error("构建店铺名称索引失败", e);
+            return null;
+        });
+    }
+
+    public boolean isReady() {
+        return index != null;
+    }
+
+    private void build() {
+        long begin = System.currentTimeMillis();
+        // 按 id 递增扫描，倒排列表直接追加即可保持有序
+        Map<String, long[]> postings = new HashMap<>();
+        Map<String, Integer> sizes = new HashMap<>();
+        Map<Long, String> names = new HashMap<>();
+        long lastId = 0;
+        while (true) {
+            List<Shop> shops = shopMapper.selectList(new QueryWrapper<Shop>()
+                    .select("id", "name")
+                    .gt("id", lastId)
+                    .orderByAsc("id")
+                    .last("limit " + BUILD_BATCH_SIZE));
+            for (Shop shop : shops) {
+                if (shop.getName() == null) {
+                    continue;
+                }
+                String name = normalize(shop.getName());
+                names.put(shop.getId(), name);
+                for (String gram : grams(name, true)) {
+                    int size = sizes.getOrDefault(gram, 0);
+                    long[] ids = postings.computeIfAbsent(gram, k -> new long[4]);
+                    if (size == ids.length) {
+                        ids = Arrays.copyOf(ids, size << 1);
+                        postings.put(gram, ids);
+                    }
+                    ids[size] = shop.getId();
+                    sizes.put(gram, size + 1);
+                }
+            }
+            if (shops.size() < BUILD_BATCH_SIZE) {
+                break;
+            }
+            lastId = shops.get(shops.size() - 1).getId();
+        }
+        Index built = new Index();
+        postings.forEach((gram, ids) -> built.postings.put(gram, Arrays.copyOf(ids, sizes.get(gram))));
+        built.names.putAll(names);
+        synchronized (this) {
+            index = built;
+            pending.forEach((id, name) -> {
+                if (name == null) {
+                    remove(id);
+                } else {
+                    put(new Shop().setId(id).setName(name));
+                }
+            });
+            pending.clear();
+        }
+        log.info("店铺名称索引构建完成, 店铺数: {}, gram 数: {}, 耗时: {}ms",
+                names.size(), postings.size(), System.currentTimeMillis() - begin);
+    }
+
+    /**
+     * 新增或修改店铺名称后调用
+     */
+    public synchronized void put(Shop shop) {
+        if (shop.getId() == null || shop.getName() == null) {
+            return;
+        }
+        if (index == null) {
+            pending.remove(shop.getId());
+            pending.put(shop.getId(), shop.getName());
+            return;
+        }
+        String name = normalize(shop.getName());
+        String old = index.names.put(shop.getId(), name);
+        Set<String> grams = grams(name, true);
+        // 改名时删除旧名称独有的 gram
+        if (old != null) {
+            removeGrams(shop.getId(), old, grams);
+        }
+        for (String gram : grams) {
+            index.postings.merge(gram, new long[]{shop.getId()}, (ids, ignore) -> add(ids, shop.getId()));
+        }
+        version++;
+    }
+
+    /**
+     * 删除店铺后调用
+     */
+    public synchronized void remove(Long id) {
+        if (id == null) {
+            return;
+        }
+        if (index == null) {
+            pending.remove(id);
+            pending.put(id, null);
+            return;
+        }
+        String old = index.names.remove(id);
+        if (old != null) {
+            removeGrams(id, old, Collections.emptySet());
+            version++;
+        }
+    }
+
+    private void removeGrams(long id, String name, Set<String> keep) {
+        for (String gram : grams(name, true)) {
+            if (!keep.contains(gram)) {
+                index.postings.computeIfPresent(gram, (k, ids) -> remove(ids, id));
+            }
+        }
+    }
+
+    /**
+     * 查询名称包含关键字的店铺 id，按 id 升序分页。
+     * 从不超过 from 的最近检查点开始查，顺序翻页时每页只需要查 size 个结果
+     */
+    public List<Long> search(String keyword, int from, int size) {
+        ConcurrentSkipListMap<Integer, Long> points = checkpoints.get(version + ":" + normalize(keyword).trim(),
+                k -> new ConcurrentSkipListMap<>());
+        Map.Entry<Integer, Long> point = points.floorEntry(from);
+        int offset = point == null ? 0 : point.getKey();
+        long afterId = point == null ? 0 : point.getValue();
+        List<Long> result = search(keyword, afterId, from - offset, size);
+        if (!result.isEmpty()) {
+            points.put(from + result.size(), result.get(result.size() - 1));
+        }
+        return result;
+    }
+
+    /**
+     * 查询名称包含关键字、id 大于 afterId 的店铺 id，按 id 升序，用于游标分页
+     */
+    public List<Long> searchAfter(String keyword, long afterId, int size) {
+        return search(keyword, afterId, 0, size);
+    }
+
+    private List<Long> search(String keyword, long afterId, int from, int size) {
+        Index current = index;
+        String query = normalize(keyword).trim();
+        if (current == null || query.isEmpty()) {
+            return Collections.emptyList();
+        }
+        // 1.取出所有 gram 的倒排列表，从最短的开始求交集；关键字每一段都只有一个字时使用 1-gram
+        Set<String> grams = grams(query, false);
+        if (grams.isEmpty()) {
+            grams = grams(query, true);
+        }
+        List<long[]> lists = new ArrayList<>();
+        for (String gram : grams) {
+            long[] ids = current.postings.get(gram);
+            if (ids == null) {
+                return Collections.emptyList();
+            }
+            lists.add(ids);
+        }
+        lists.sort(Comparator.comparingInt(ids -> ids.length));
+        // 2.依次校验候选 id 是否出现在其它列表中，以及名称是否连续包含关键字
+        List<Long> result = new ArrayList<>(size);
+        int skipped = 0;
+        long[] candidates = lists.get(0);
+        int start = Arrays.binarySearch(candidates, afterId + 1);
+        for (int i = start >= 0 ? start : -start - 1; i < candidates.length; i++) {
+            long id = candidates[i];
+            if (!containsAll(lists, id)) {
+                continue;
+            }
+            String name = current.names.get(id);
+            if (name == null || !name.contains(query)) {
+                continue;
+            }
+            if (skipped++ < from) {
+                continue;
+            }
+            result.add(id);
+            if (result.size() == size) {
+                break;
+            }
+        }
+        return result;
+    }
+
+    private static boolean containsAll(List<long[]> lists, long id) {
+        for (int i = 1; i < lists.size(); i++) {
+            if (Arrays.binarySearch(lists.get(i), id) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 转小写，连续的非字母数字字符替换成一个空格
+     */
+    private static String normalize(String s) {
+        StringBuilder sb = new StringBuilder(s.length());
+        boolean separator = false;
+        for (int i = 0; i < s.length(); ) {
+            int cp = s.codePointAt(i);
+            i += Character.charCount(cp);
+            if (Character.isLetterOrDigit(cp)) {
+                sb.appendCodePoint(Character.toLowerCase(cp));
+                separator = false;
+            } else if (!separator) {
+                sb.append(' ');
+                separator = true;
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 每一段的 2-gram，unigram 为 true 时还包含 1-gram
+     */
+    private static Set<String> grams(String name, boolean unigram) {
+        Set<String> grams = new LinkedHashSet<>();
+        for (String part : name.split(" ")) {
+            int[] cps = part.codePoints().toArray();
+            for (int i = 0; i < cps.length; i++) {
+                if (unigram) {
+                    grams.add(new String(cps, i, 1));
+                }
+                if (i + 1 < cps.length) {
+                    grams.add(new String(cps, i, 2));
+                }
+            }
+        }
+        return grams;
+    }
+
+    private static long[] add(long[] ids, long id) {
+        int pos = Arrays.binarySearch(ids, id);
+        if (pos >= 0) {
+            return ids;
+        }
+        pos = -pos - 1;
+        long[] copy = new long[ids.length + 1];
+        System.arraycopy(ids, 0, copy, 0, pos);
+        copy[pos] = id;
+        System.arraycopy(ids, pos, copy, pos + 1, ids.length - pos);
+        return copy;
+    }
+
+    private static long[] remove(long[] ids, long id) {
+        int pos = Arrays.binarySearch(ids, id);
+        if (pos < 0) {
+            return ids;
+        }
+        if (ids.length == 1) {
+            return null;
+        }
+        long[] copy = new long[ids.length - 1];
+        System.arraycopy(ids, 0, copy, 0, pos);
+        System.arraycopy(ids, pos + 1, copy, pos, ids.length - pos - 1);
+        return copy;
+    }
+
+    /**
+     * 倒排列表是有序的 long 数组，修改时整体替换（copy-on-write），查询不需要加锁
+     */
+    private static class Index {
+        private final ConcurrentHashMap<String, long[]> postings = new ConcurrentHashMap<>();
+        private final ConcurrentHashMap<Long, String> names = new ConcurrentHashMap<>();
+    }
+}
@@ -0,0 +1,101 @@
+package com.hmdp.utils;
+
+import java.util.function.LongSupplier;
+
+/**
+ * 进程内的雪花 id 生成器，不需要任何网络 IO。
+ * <p>
+ * 布局：0 | 1 | 40 位毫秒时间戳 | 10 位 workerId | 12 位序列号。
+ * 第 62 位固定为 1，而 {@link RedisIdWorker} 的 INCR/号段 id 在 2056 年之前第 62 位都是 0，
+ * 同一个业务前缀切换生成策略也不会和历史 id 冲突
+ */
+public class SnowflakeIdGenerator {
+    /**
+     * 开始时间戳 2022-01-01 00:00:00，与 RedisIdWorker 一致
+     */
+    private static final long BEGIN_MILLIS = 1640995200000L;
+
+    private static final int SEQUENCE_BITS = 12;
+    private static final int WORKER_BITS = 10;
+    private static final long MAX_SEQUENCE = (1L << SEQUENCE_BITS) - 1;
+    public static final long MAX_WORKER_ID = (1L << WORKER_BITS) - 1;
+    private static final long FLAG_BIT = 1L << 62;
+
+    private final long workerId;
+    private final LongSupplier clock;
+    private long lastTimestamp = -1L;
+    private long sequence = 0L;
+
+    public SnowflakeIdGenerator(long workerId) {
+        this(workerId, System::currentTimeMillis);
+    }
+
+    SnowflakeIdGenerator(long workerId, LongSupplier clock) {
+        if (workerId < 0 || workerId > MAX_WORKER_ID) {
+            throw new IllegalArgumentException("workerId 超出范围: " + workerId);
+        }
+        this.workerId = workerId;
+        this.clock = clock;
+    }
+
+    public long getWorkerId() {
+        return workerId;
+    }
+
+    public long nextId() {
+        return nextId(Long.MAX_VALUE);
+    }
+
+    /**
+     * @param notAfterMillis 允许使用的时间戳上限（不含），通常是 workerId 租约的安全期限；
+     *                       序列号用完或时钟回拨时会借用未来的毫秒，借用的毫秒不能超过租约，
+     *                       否则租约过期后接手同一个 workerId 的实例可能在同一毫秒生成重复 id
+     * @throws IllegalStateException 需要的时间戳超过上限时抛出，不消耗序列号
+     */
+    public synchronized long nextId(long notAfterMillis) {
+        long timestamp = clock.getAsLong() - BEGIN_MILLIS;
+        if (timestamp < lastTimestamp) {
+            // 时钟回拨：继续沿用上一次的时间戳，不阻塞也不会生成重复 id
+            timestamp = lastTimestamp;
+        }
+        long nextSequence = 0L;
+        if (timestamp == lastTimestamp) {
+            nextSequence = (sequence + 1) & MAX_SEQUENCE;
+            if (nextSequence == 0) {
+                // 同一毫秒内序列号用完，借用下一毫秒，等真实时钟追上后自然对齐
+                timestamp = lastTimestamp + 1;
+            }
+        }
+        if (timestamp + BEGIN_MILLIS >= notAfterMillis) {
+            throw new IllegalStateException("雪花 id 的时间戳超过 workerId 租约期限");
+        }
+        sequence = nextSequence;
+        lastTimestamp = timestamp;
+        return FLAG_BIT | timestamp << (WORKER_BITS + SEQUENCE_BITS) | workerId << SEQUENCE_BITS | sequence;
+    }
+
+    /**
+     * 最后一次生成的 id 使用的时间戳（毫秒），可能因为借用而大于当前时间
+     */
+    public synchronized long getLastIssuedMillis() {
+        return lastTimestamp < 0 ? 0 : lastTimestamp + BEGIN_MILLIS;
+    }
+
+    /**
+     * 等到真实时钟越过最后一次生成的 id 使用的时间戳，释放 workerId 之前调用，
+     * 保证之后租用同一个 workerId 的实例不会用到本实例借用过的毫秒
+     * @param maxWaitMillis 最长等待时间
+     * @return 在等待时间内越过时返回 true
+     */
+    public boolean awaitIssuedTime(long maxWaitMillis) throws InterruptedException {
+        long deadline = clock.getAsLong() + maxWaitMillis;
+        long now;
+        while ((now = clock.getAsLong()) <= getLastIssuedMillis()) {
+            if (now >= deadline) {
+                return false;
+            }
+            Thread.sleep(Math.min(getLastIssuedMillis() - now + 1, deadline - now));
+        }
+        return true;
+    }
+}
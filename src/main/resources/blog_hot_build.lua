@@ -0,0 +1,26 @@
+-- 构建热门排行的一批笔记，写入临时 ZSET，全部完成后再 RENAME 覆盖正式排行
+-- 初始热度按数据库计数加上还没有刷写的增量计算，读取增量和写入分数在一个脚本里，
+-- 之后发生的点赞、评论由 blog_hot_incr.lua 直接累加到临时 ZSET，不会重复或遗漏
+-- KEYS[1] 临时 ZSET，KEYS[2] 点赞数增量，KEYS[3] 正在刷写的点赞数增量，KEYS[4] 评论数增量，KEYS[5] 正在刷写的评论数增量
+-- ARGV[1] epoch，ARGV[2] 半衰期（毫秒），ARGV[3] 发布权重，ARGV[4] 点赞权重，ARGV[5] 评论权重，
+-- 之后每 4 个参数一篇笔记：id，数据库中的点赞数，数据库中的评论数，发布时间戳（毫秒）
+local function pending(key, flushingKey, id)
+    return (tonumber(redis.call('HGET', key, id)) or 0) + (tonumber(redis.call('HGET', flushingKey, id)) or 0)
+end
+
+local epoch = tonumber(ARGV[1])
+local halfLife = tonumber(ARGV[2])
+local postWeight = tonumber(ARGV[3])
+local likeWeight = tonumber(ARGV[4])
+local commentWeight = tonumber(ARGV[5])
+local count = 0
+for i = 6, #ARGV, 4 do
+    local id = ARGV[i]
+    local liked = math.max(0, tonumber(ARGV[i + 1]) + pending(KEYS[2], KEYS[3], id))
+    local comments = math.max(0, tonumber(ARGV[i + 2]) + pending(KEYS[4], KEYS[5], id))
+    local weight = postWeight + likeWeight * liked + commentWeight * comments
+    -- ZADD 覆盖构建前由 blog_hot_incr.lua 写入的部分热度，这部分已经包含在增量中
+    redis.call('ZADD', KEYS[1], weight * math.pow(2, (tonumber(ARGV[i + 3]) - epoch) / halfLife), id)
+    count = count + 1
+end
+return count
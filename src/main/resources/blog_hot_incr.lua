@@ -0,0 +1,31 @@
+-- 增加笔记的热度，热度按时间衰减（forward decay）
+-- 同样的权重，越晚发生的分数越高：score += weight * 2 ^ ((eventTime - epoch) / halfLife)，
+-- 所有分数同时乘以同一个衰减因子不影响排序，由定时任务 blog_hot_rebase.lua 统一衰减并推进 epoch。
+-- 取消点赞、删除评论传入负的权重和原来行为发生的时间，减去的正好是当时加上的热度
+-- 构建排行期间（KEYS[3] 临时 ZSET 存在）同时累加到临时 ZSET，构建完成后 RENAME 覆盖正式排行时不会丢失
+-- KEYS[1] 热度 ZSET，KEYS[2] epoch，KEYS[3] 构建中的临时 ZSET
+-- ARGV[1] 笔记id，ARGV[2] 权重，ARGV[3] 行为发生的时间戳（毫秒），ARGV[4] 半衰期（毫秒）
+local function incr(key, delta)
+    -- 笔记已经不在排行中（被裁剪掉），不需要再减
+    if (delta < 0 and not redis.call('ZSCORE', key, ARGV[1])) then
+        return
+    end
+    local score = tonumber(redis.call('ZINCRBY', key, delta, ARGV[1]))
+    -- 浮点误差可能使分数略小于0
+    if (score < 0) then
+        redis.call('ZADD', key, 0, ARGV[1])
+    end
+end
+
+local eventTime = tonumber(ARGV[3])
+local epoch = tonumber(redis.call('GET', KEYS[2]))
+if (not epoch) then
+    redis.call('SET', KEYS[2], ARGV[3])
+    epoch = eventTime
+end
+local delta = tonumber(ARGV[2]) * math.pow(2, (eventTime - epoch) / tonumber(ARGV[4]))
+incr(KEYS[1], delta)
+if (redis.call('EXISTS', KEYS[3]) == 1) then
+    incr(KEYS[3], delta)
+end
+return 0
@@ -0,0 +1,16 @@
+-- 热度衰减：所有分数乘以 2 ^ (-(now - epoch) / halfLife)，epoch 推进到 now，只保留分数最高的 maxSize 篇笔记
+-- 和 blog_hot_incr.lua 在同一个 epoch 下计算，衰减前后排序不变，只是避免分数无限增长
+-- KEYS[1] 热度 ZSET，KEYS[2] epoch
+-- ARGV[1] 当前时间戳（毫秒），ARGV[2] 半衰期（毫秒），ARGV[3] 最多保留的笔记数
+local epoch = tonumber(redis.call('GET', KEYS[2]))
+if (not epoch) then
+    redis.call('SET', KEYS[2], ARGV[1])
+    return 0
+end
+local factor = math.pow(2, -(tonumber(ARGV[1]) - epoch) / tonumber(ARGV[2]))
+if (redis.call('EXISTS', KEYS[1]) == 1) then
+    redis.call('ZUNIONSTORE', KEYS[1], 1, KEYS[1], 'WEIGHTS', tostring(factor))
+    redis.call('ZREMRANGEBYRANK', KEYS[1], 0, -tonumber(ARGV[3]) - 1)
+end
+redis.call('SET', KEYS[2], ARGV[1])
+return redis.call('ZCARD', KEYS[1])
@@ -0,0 +1,20 @@
+-- 点赞或取消点赞，点赞用户 ZSET 和待刷写的点赞数增量在一个脚本里修改，保证原子
+-- KEYS[1] 点赞用户 ZSET blog:liked:{blogId}，score 是点赞时间，KEYS[2] 点赞数增量 hash
+-- ARGV[1] 用户id，ARGV[2] 笔记id，ARGV[3] 当前时间戳（毫秒）
+-- 返回 {状态, 点赞时间}，状态1表示点赞，0表示取消点赞；取消点赞时返回原来的点赞时间，用于扣减当时加上的热度。
+-- 点赞数不在这里返回，和查询笔记一样按数据库计数加上未刷写的增量计算
+
+-- 旧的点赞用户 SET 由 BlogLikedMigrator 转换成 ZSET 后才会执行到这里
+-- 切换点赞状态
+local state = 1
+local likedAt = redis.call('ZSCORE', KEYS[1], ARGV[1])
+if (likedAt) then
+    redis.call('ZREM', KEYS[1], ARGV[1])
+    redis.call('HINCRBY', KEYS[2], ARGV[2], -1)
+    state = 0
+else
+    likedAt = ARGV[3]
+    redis.call('ZADD', KEYS[1], likedAt, ARGV[1])
+    redis.call('HINCRBY', KEYS[2], ARGV[2], 1)
+end
+return {state, tonumber(likedAt)}
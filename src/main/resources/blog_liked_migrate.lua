@@ -0,0 +1,20 @@
+-- 把旧的点赞用户 SET 转换成按点赞时间排序的 ZSET
+-- KEYS[1] 点赞用户集合 blog:liked:{blogId}
+-- 旧数据没有点赞时间，分数记为0，排在所有新的点赞之前
+-- 返回转换的用户数，已经是 ZSET 或者不存在时返回0
+if (redis.call('TYPE', KEYS[1]).ok ~= 'set') then
+    return 0
+end
+local members = redis.call('SMEMBERS', KEYS[1])
+redis.call('DEL', KEYS[1])
+-- 分批 ZADD，避免 unpack 的参数过多
+local args = {}
+for i, member in ipairs(members) do
+    table.insert(args, 0)
+    table.insert(args, member)
+    if (#args >= 1000 or i == #members) then
+        redis.call('ZADD', KEYS[1], unpack(args))
+        args = {}
+    end
+end
+return #members
@@ -0,0 +1,21 @@
+-- 发表评论后更新缓存的第一页评论、评论版本号和待刷写的评论数增量
+-- KEYS[1] 第一页评论 LIST cache:comments:{blogId}，新的在前，KEYS[2] 评论版本号，KEYS[3] 评论数增量 hash
+-- ARGV[1] 评论 json，ARGV[2] 笔记id，ARGV[3] 第一页的条数，ARGV[4] 评论id，ARGV[5] 版本号的过期时间（秒）
+-- 第一页没有缓存时不创建，下次查询时从数据库加载；版本号变化后，正在从数据库加载的旧数据不会写入缓存
+local head = redis.call('LINDEX', KEYS[1], 0)
+if (head) then
+    local headId = tonumber(cjson.decode(head).id)
+    local id = tonumber(ARGV[4])
+    if (headId < id) then
+        redis.call('LPUSH', KEYS[1], ARGV[1])
+        redis.call('LTRIM', KEYS[1], 0, tonumber(ARGV[3]) - 1)
+    elseif (headId > id) then
+        -- 更新的评论已经在缓存中，插入位置不确定，删除缓存，下次查询时重新加载
+        redis.call('DEL', KEYS[1])
+    end
+    -- headId == id：加载缓存时已经查到了这条评论
+end
+redis.call('INCR', KEYS[2])
+redis.call('EXPIRE', KEYS[2], ARGV[5])
+redis.call('HINCRBY', KEYS[3], ARGV[2], 1)
+return 0
@@ -0,0 +1,13 @@
+-- 缓存笔记的第一页评论，已经被其它请求缓存时不重复写入
+-- KEYS[1] 第一页评论 LIST cache:comments:{blogId}，KEYS[2] 评论版本号 cache:comments:ver:{blogId}
+-- ARGV[1] 过期时间（秒），ARGV[2] 查询数据库之前读到的版本号，不存在时是空字符串，ARGV[3..] 评论 json，新的在前
+-- 查询数据库期间发表或删除了评论（版本号变化），查到的数据可能已经过时，不写入缓存
+if (redis.call('EXISTS', KEYS[1]) == 1) then
+    return 0
+end
+if ((redis.call('GET', KEYS[2]) or '') ~= ARGV[2]) then
+    return 0
+end
+redis.call('RPUSH', KEYS[1], unpack(ARGV, 3))
+redis.call('EXPIRE', KEYS[1], ARGV[1])
+return 1
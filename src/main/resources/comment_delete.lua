@@ -0,0 +1,9 @@
+-- 删除评论后删除缓存的第一页评论，更新评论版本号和待刷写的评论数增量
+-- KEYS[1] 第一页评论 LIST cache:comments:{blogId}，KEYS[2] 评论版本号，KEYS[3] 评论数增量 hash
+-- ARGV[1] 笔记id，ARGV[2] 版本号的过期时间（秒）
+-- 版本号变化后，删除之前从数据库加载、还没有写入缓存的第一页不会再写入，被删除的评论不会重新出现
+redis.call('DEL', KEYS[1])
+redis.call('INCR', KEYS[2])
+redis.call('EXPIRE', KEYS[2], ARGV[2])
+redis.call('HINCRBY', KEYS[3], ARGV[1], -1)
+return 0
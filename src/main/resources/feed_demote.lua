@@ -0,0 +1,12 @@
+-- 作者改回推模式：删除已经推送到粉丝收件箱的笔记，发件箱为空时从大 V 集合中移除
+-- KEYS[1] 发件箱 feed:out:{authorId}，KEYS[2] 大 V 集合
+-- ARGV[1] 作者id，ARGV[2..] 已经推送的笔记id
+-- 返回发件箱中剩余的笔记数，推送期间新写入的笔记会留下，作者仍然是拉模式
+for i = 2, #ARGV do
+    redis.call('ZREM', KEYS[1], ARGV[i])
+end
+local remaining = redis.call('ZCARD', KEYS[1])
+if (remaining == 0) then
+    redis.call('SREM', KEYS[2], ARGV[1])
+end
+return remaining
@@ -0,0 +1,7 @@
+-- 从兄弟分片预扣一件库存，KEYS[1] 是分片库存key
+-- 预扣成功返回1，库存不足返回0
+if(tonumber(redis.call('get', KEYS[1]) or '0') <= 0) then
+    return 0
+end
+redis.call('incrby', KEYS[1], -1)
+return 1
@@ -0,0 +1,40 @@
+-- 分片库存下单，KEYS 使用相同的 hash tag，在 Redis Cluster 下位于同一个 slot
+
+-- 1.参数列表
+-- 1.1.用户所在分片的下单用户集合
+local orderKey = KEYS[1]
+-- 1.2.用户所在的订单 stream 分区
+local streamKey = KEYS[2]
+-- 1.3.KEYS[3] 之后是依次尝试扣减的库存分片：用户所在分片在前，其后是同一个 slot 的兄弟分片
+-- 1.4.优惠券id、用户id、订单id
+local voucherId = ARGV[1]
+local userId = ARGV[2]
+local orderId = ARGV[3]
+-- 1.5.为 1 表示库存已经在其它 slot 的兄弟分片预扣
+local reserved = ARGV[4]
+
+-- 2.判断用户是否下单 SISMEMBER orderKey userId
+if(redis.call('sismember', orderKey, userId) == 1) then
+    -- 存在，说明是重复下单，返回2
+    return 2
+end
+-- 3.没有预扣时，依次扣同一个 slot 内各分片的库存
+if(reserved ~= '1') then
+    local deducted = false
+    for i = 3, #KEYS do
+        if(tonumber(redis.call('get', KEYS[i]) or '0') > 0) then
+            redis.call('incrby', KEYS[i], -1)
+            deducted = true
+            break
+        end
+    end
+    if(not deducted) then
+        -- 同一个 slot 内的分片都没有库存，返回1，由调用方到其它 slot 的兄弟分片预扣
+        return 1
+    end
+end
+-- 4.下单（保存用户）sadd orderKey userId
+redis.call('sadd', orderKey, userId)
+-- 5.发送消息到队列中
+redis.call('xadd', streamKey, '*', 'userId', userId, 'voucherId', voucherId, 'id', orderId)
+return 0
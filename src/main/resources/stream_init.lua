@@ -0,0 +1,16 @@
+-- 消费者独占分区后的初始化
+-- KEYS[1] 是分区 stream，ARGV[1] 是消费者组，ARGV[2] 是当前消费者
+
+-- 1.创建消费者组，组已存在时 XGROUP 返回 BUSYGROUP 错误，直接忽略
+redis.pcall('xgroup', 'create', KEYS[1], ARGV[1], '0', 'MKSTREAM')
+
+-- 2.把组内其它消费者遗留在 pending-list 中的消息认领到当前消费者
+local pending = redis.call('xpending', KEYS[1], ARGV[1], '-', '+', 1000)
+local claimed = 0
+for _, entry in ipairs(pending) do
+    if entry[2] ~= ARGV[2] then
+        redis.call('xclaim', KEYS[1], ARGV[1], ARGV[2], 0, entry[1], 'JUSTID')
+        claimed = claimed + 1
+    end
+end
+return claimed
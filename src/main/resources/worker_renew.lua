@@ -0,0 +1,6 @@
+-- 续期 workerId 租约，KEYS[1] 是租约key，ARGV[1] 是当前实例标示，ARGV[2] 是有效期（秒）
+-- 租约仍属于当前实例时续期并返回1，否则返回0
+if (redis.call('GET', KEYS[1]) == ARGV[1]) then
+    return redis.call('EXPIRE', KEYS[1], ARGV[2])
+end
+return 0
@@ -0,0 +1,94 @@
+package com.hmdp.benchmark;
+
+import com.hmdp.entity.Shop;
+import com.hmdp.utils.BinaryCacheCodec;
+import com.hmdp.utils.CacheCodec;
+import com.hmdp.utils.JsonCacheCodec;
+import com.hmdp.utils.RedisData;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.time.LocalDateTime;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 对比缓存信封 JSON 与二进制两种格式编解码 Shop 的开销，运行 main 方法时先输出每条缓存的字节数
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CacheCodecBenchmark {
+
+    private final CacheCodec json = new JsonCacheCodec();
+    private final CacheCodec binary = new BinaryCacheCodec(json);
+
+    private RedisData redisData;
+    private byte[] jsonBytes;
+    private byte[] binaryBytes;
+
+    @Setup
+    public void setup() {
+        redisData = sample();
+        jsonBytes = json.encode(redisData);
+        binaryBytes = binary.encode(redisData);
+    }
+
+    private static RedisData sample() {
+        Shop shop = new Shop()
+                .setId(1L)
+                .setName("103茶餐厅")
+                .setTypeId(1L)
+                .setImages("https://qcloud.dpfile.com/pc/jiclIsCKmOI2arxKN1Uf0Hx3PucIJH8q0QSz-Z8llzcN56-_QiKuOvyio1OOxsRtFoXqu0G3iT2T27qat3WhLVEuLYk00OmSS1IdNpm8K8sG4JN9RIm2mTKcbLtc2o2vfCF2ubeXzk49OsGrXt_KYDCngOyCwZK-s3fqawWswzk.jpg")
+                .setArea("大关")
+                .setAddress("金华路锦昌文华苑29号")
+                .setX(120.149192)
+                .setY(30.316078)
+                .setAvgPrice(80L)
+                .setSold(4215)
+                .setComments(3035)
+                .setScore(37)
+                .setOpenHours("10:00-22:00")
+                .setCreateTime(LocalDateTime.of(2021, 12, 22, 18, 10, 39))
+                .setUpdateTime(LocalDateTime.of(2022, 1, 13, 17, 32, 19));
+        RedisData redisData = new RedisData();
+        redisData.setData(shop);
+        redisData.setExpireTime(LocalDateTime.now().plusMinutes(30));
+        return redisData;
+    }
+
+    @Benchmark
+    public byte[] jsonEncode() {
+        return json.encode(redisData);
+    }
+
+    @Benchmark
+    public RedisData jsonDecode() {
+        return json.decode(jsonBytes, Shop.class, false);
+    }
+
+    @Benchmark
+    public byte[] binaryEncode() {
+        return binary.encode(redisData);
+    }
+
+    @Benchmark
+    public RedisData binaryDecode() {
+        return binary.decode(binaryBytes, Shop.class, false);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        RedisData redisData = sample();
+        System.out.println("json bytes/entry: " + new JsonCacheCodec().encode(redisData).length);
+        System.out.println("binary bytes/entry: " + new BinaryCacheCodec(new JsonCacheCodec()).encode(redisData).length);
+        Options options = new OptionsBuilder()
+                .include(CacheCodecBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,113 @@
+package com.hmdp.benchmark;
+
+import com.hmdp.utils.FeedMerger;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 推拉结合 feed 的读写开销的模型，不连接 Redis，结果只用来比较不同参数的相对开销。
+ * <p>
+ * 读：只测量内存中归并收件箱和 celebrities 个大 V 发件箱的一页，每个来源是预先生成的 offset + size 条，
+ * 不包括 pipeline 中 ZREVRANGEBYSCORE 的往返和序列化开销，实际的读取耗时需要在 Redis 上测量。
+ * 写：运行 main 方法时先在合成的关注关系图（粉丝数按 Zipf 分布解析计算，不是实际的 tb_follow）上
+ * 估算不同 push-threshold 下每次发布写入的收件箱数，不是实际执行的 Redis 命令数
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FeedMergerBenchmark {
+
+    private static final int PAGE_SIZE = 10;
+
+    /**
+     * 读者关注的大 V 数，0 相当于纯推模式
+     */
+    @Param({"0", "10", "50", "200"})
+    private int celebrities;
+
+    /**
+     * 上一页返回的 offset，越大每个来源需要读取的条数越多
+     */
+    @Param({"0", "100"})
+    private int offset;
+
+    private List<List<FeedMerger.Entry>> sources;
+    private long max;
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        long now = System.currentTimeMillis();
+        // 所有来源的时间戳都相同时 offset 才有意义，这里让前 offset 条时间戳相同，模拟同一毫秒发布的笔记
+        max = now;
+        sources = new ArrayList<>(celebrities + 1);
+        long member = 1;
+        for (int i = 0; i <= celebrities; i++) {
+            List<FeedMerger.Entry> source = new ArrayList<>(offset + PAGE_SIZE);
+            long time = now;
+            for (int j = 0; j < offset + PAGE_SIZE; j++) {
+                if (j >= offset) {
+                    time -= 1 + random.nextInt(60_000);
+                }
+                source.add(new FeedMerger.Entry(String.valueOf(member++), time));
+            }
+            // 和 ZREVRANGEBYSCORE 一样按 score、member 倒序
+            source.sort((a, b) -> a.getScore() != b.getScore()
+                    ? Long.compare(b.getScore(), a.getScore())
+                    : b.getMember().compareTo(a.getMember()));
+            sources.add(source);
+        }
+    }
+
+    @Benchmark
+    public FeedMerger.Page merge() {
+        return FeedMerger.merge(sources, max, offset, PAGE_SIZE);
+    }
+
+    /**
+     * 写放大的解析模型：users 个作者，第 k 个作者的粉丝数约为 maxFollowers / k（Zipf 分布），每个作者发布一篇
+     */
+    private static void printWriteAmplification() {
+        System.out.println("[model] write amplification on a synthetic Zipf follower graph, no Redis involved");
+        int users = 100_000;
+        int maxFollowers = 1_000_000;
+        long[] thresholds = {Long.MAX_VALUE, 100_000, 10_000, 1_000};
+        for (long threshold : thresholds) {
+            long writes = 0;
+            long maxWrites = 0;
+            int pulled = 0;
+            for (int k = 1; k <= users; k++) {
+                long followers = maxFollowers / k;
+                long w = followers >= threshold ? 1 : followers;
+                if (followers >= threshold) {
+                    pulled++;
+                }
+                writes += w;
+                maxWrites = Math.max(maxWrites, w);
+            }
+            System.out.printf("[model] push-threshold=%s: avg writes/post=%.1f, max writes/post=%d, pull authors=%d%n",
+                    threshold == Long.MAX_VALUE ? "none" : String.valueOf(threshold),
+                    writes / (double) users, maxWrites, pulled);
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        printWriteAmplification();
+        System.out.println("[model] merge benchmark below measures the in-memory k-way merge only, not Redis reads");
+        Options options = new OptionsBuilder()
+                .include(FeedMergerBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
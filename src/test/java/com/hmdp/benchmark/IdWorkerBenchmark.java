@@ -0,0 +1,80 @@
+package com.hmdp.benchmark;
+
+import com.hmdp.utils.RedisIdWorker;
+import com.hmdp.utils.SnowflakeIdGenerator;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 对比 order id 三种生成策略的开销：每次 INCR、号段、雪花。
+ * 需要本地 Redis（127.0.0.1:6379），运行 main 方法即可
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class IdWorkerBenchmark {
+
+    private LettuceConnectionFactory connectionFactory;
+    private RedisIdWorker incrWorker;
+    private RedisIdWorker segmentWorker;
+    private SnowflakeIdGenerator snowflake;
+
+    @Setup
+    public void setup() {
+        connectionFactory = new LettuceConnectionFactory("127.0.0.1", 6379);
+        connectionFactory.afterPropertiesSet();
+        StringRedisTemplate stringRedisTemplate = new StringRedisTemplate(connectionFactory);
+
+        incrWorker = newWorker(stringRedisTemplate, new String[0]);
+        segmentWorker = newWorker(stringRedisTemplate, new String[]{"order"});
+        snowflake = new SnowflakeIdGenerator(1);
+    }
+
+    private RedisIdWorker newWorker(StringRedisTemplate stringRedisTemplate, String[] segmentPrefixes) {
+        RedisIdWorker worker = new RedisIdWorker(stringRedisTemplate);
+        ReflectionTestUtils.setField(worker, "segmentPrefixes", segmentPrefixes);
+        ReflectionTestUtils.setField(worker, "segmentStep", 1000L);
+        ReflectionTestUtils.setField(worker, "snowflakePrefixes", new String[0]);
+        ReflectionTestUtils.invokeMethod(worker, "init");
+        return worker;
+    }
+
+    @TearDown
+    public void tearDown() {
+        connectionFactory.destroy();
+    }
+
+    @Benchmark
+    public long incr() {
+        return incrWorker.nextId("order");
+    }
+
+    @Benchmark
+    public long segment() {
+        return segmentWorker.nextId("order");
+    }
+
+    @Benchmark
+    public long snowflake() {
+        return snowflake.nextId();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(IdWorkerBenchmark.class.getSimpleName())
+                .build();
+        new Runner(options).run();
+    }
+}
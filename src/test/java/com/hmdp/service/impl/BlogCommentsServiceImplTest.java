@@ -0,0 +1,210 @@
+package com.hmdp.service.impl;
+
+import cn.hutool.json.JSONUtil;
+import com.baomidou.mybatisplus.extension.conditions.query.QueryChainWrapper;
+import com.hmdp.dto.UserDTO;
+import com.hmdp.entity.Blog;
+import com.hmdp.entity.BlogComments;
+import com.hmdp.mapper.BlogCommentsMapper;
+import com.hmdp.service.IBlogService;
+import com.hmdp.utils.BlogHotRanking;
+import com.hmdp.utils.UserHolder;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.ListOperations;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.ValueOperations;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 第一页评论缓存在加载期间遇到删除、发表评论时不能缓存过时的数据，不依赖数据库和 Redis
+ */
+class BlogCommentsServiceImplTest {
+
+    private static final Long BLOG_ID = 7L;
+    private static final Long USER_ID = 1L;
+    private static final String LIST_KEY = "cache:comments:" + BLOG_ID;
+
+    private BlogCommentsServiceImpl service;
+    private QueryChainWrapper<BlogComments> firstPage;
+    /**
+     * 内存中模拟 Redis 的 LIST 和版本号，lua 脚本按相同的语义执行
+     */
+    private final Map<String, LinkedList<String>> lists = new HashMap<>();
+    private final Map<String, Long> versions = new HashMap<>();
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        service = spy(new BlogCommentsServiceImpl());
+        ReflectionTestUtils.setField(service, "baseMapper", mock(BlogCommentsMapper.class));
+        firstPage = mock(QueryChainWrapper.class, RETURNS_SELF);
+        doReturn(firstPage).when(service).query();
+        IBlogService blogService = mock(IBlogService.class);
+        when(blogService.getById(BLOG_ID)).thenReturn(new Blog());
+        ReflectionTestUtils.setField(service, "blogService", blogService);
+        ReflectionTestUtils.setField(service, "blogHotRanking", mock(BlogHotRanking.class));
+
+        StringRedisTemplate stringRedisTemplate = mock(StringRedisTemplate.class);
+        ListOperations<String, String> listOperations = mock(ListOperations.class);
+        when(listOperations.range(anyString(), anyLong(), anyLong()))
+                .thenAnswer(invocation -> lists.get(invocation.<String>getArgument(0)));
+        ValueOperations<String, String> valueOperations = mock(ValueOperations.class);
+        when(valueOperations.get(anyString())).thenAnswer(invocation -> {
+            Long version = versions.get(invocation.<String>getArgument(0));
+            return version == null ? null : version.toString();
+        });
+        doReturn(listOperations).when(stringRedisTemplate).opsForList();
+        doReturn(valueOperations).when(stringRedisTemplate).opsForValue();
+        doAnswer(invocation -> runScript(invocation.getArgument(0), invocation.getArgument(1),
+                Arrays.copyOfRange(invocation.getArguments(), 2, invocation.getArguments().length)))
+                .when(stringRedisTemplate).execute(any(RedisScript.class), anyList(), any());
+        ReflectionTestUtils.setField(service, "stringRedisTemplate", stringRedisTemplate);
+
+        UserDTO user = new UserDTO();
+        user.setId(USER_ID);
+        UserHolder.saveUser(user);
+    }
+
+    @AfterEach
+    void tearDown() {
+        UserHolder.removeUser();
+    }
+
+    private static BlogComments comment(long id) {
+        return new BlogComments().setId(id).setBlogId(BLOG_ID).setUserId(USER_ID)
+                .setContent("评论" + id).setCreateTime(LocalDateTime.of(2022, 1, 1, 0, 0));
+    }
+
+    private List<Long> cachedIds() {
+        LinkedList<String> list = lists.get(LIST_KEY);
+        return list == null ? null : list.stream()
+                .map(json -> JSONUtil.toBean(json, BlogComments.class).getId())
+                .collect(Collectors.toList());
+    }
+
+    @Test
+    void testLoadPopulatesCache() {
+        when(firstPage.list()).thenReturn(Arrays.asList(comment(2), comment(1)));
+
+        service.queryFirstPage(BLOG_ID);
+
+        assertEquals(Arrays.asList(2L, 1L), cachedIds());
+    }
+
+    @Test
+    void testDeleteDuringLoadIsNotCached() {
+        BlogComments deleted = comment(2);
+        doReturn(deleted).when(service).getById(2L);
+        doReturn(true).when(service).removeById(2L);
+        // 查询数据库之后、写入缓存之前，评论被删除
+        when(firstPage.list()).thenAnswer(invocation -> {
+            List<BlogComments> stale = Arrays.asList(comment(2), comment(1));
+            assertTrue(service.deleteComment(2L).getSuccess());
+            return stale;
+        });
+
+        service.queryFirstPage(BLOG_ID);
+
+        // 过时的数据没有写入缓存，下次查询重新加载
+        assertNull(cachedIds());
+        when(firstPage.list()).thenReturn(new ArrayList<>(Arrays.asList(comment(1))));
+        service.queryFirstPage(BLOG_ID);
+        assertEquals(Arrays.asList(1L), cachedIds());
+    }
+
+    @Test
+    void testSaveDuringLoadIsNotLost() {
+        doAnswer(invocation -> {
+            invocation.<BlogComments>getArgument(0).setId(3L);
+            return true;
+        }).when(service).save(any(BlogComments.class));
+        // 查询数据库之后、写入缓存之前，发表了新评论，此时缓存不存在
+        when(firstPage.list()).thenAnswer(invocation -> {
+            List<BlogComments> stale = Arrays.asList(comment(2), comment(1));
+            assertTrue(service.saveComment(new BlogComments().setBlogId(BLOG_ID).setContent("新评论")).getSuccess());
+            return stale;
+        });
+
+        service.queryFirstPage(BLOG_ID);
+
+        // 没有新评论的第一页不能写入缓存
+        assertNull(cachedIds());
+        when(firstPage.list()).thenReturn(Arrays.asList(comment(3), comment(2), comment(1)));
+        service.queryFirstPage(BLOG_ID);
+        assertEquals(Arrays.asList(3L, 2L, 1L), cachedIds());
+    }
+
+    @Test
+    void testSaveAfterLoadPushesToCachedPage() {
+        when(firstPage.list()).thenReturn(Arrays.asList(comment(2), comment(1)));
+        service.queryFirstPage(BLOG_ID);
+        doAnswer(invocation -> {
+            invocation.<BlogComments>getArgument(0).setId(3L);
+            return true;
+        }).when(service).save(any(BlogComments.class));
+
+        service.saveComment(new BlogComments().setBlogId(BLOG_ID).setContent("新评论"));
+
+        assertEquals(Arrays.asList(3L, 2L, 1L), cachedIds());
+    }
+
+    /**
+     * 按 comment_cache_init.lua、comment_add.lua、comment_delete.lua 的语义修改内存中的数据
+     */
+    private Long runScript(RedisScript<?> script, List<String> keys, Object[] args) {
+        String listKey = keys.get(0);
+        String versionKey = keys.get(1);
+        if (script == ReflectionTestUtils.getField(BlogCommentsServiceImpl.class, "CACHE_INIT_SCRIPT")) {
+            Long version = versions.get(versionKey);
+            String current = version == null ? "" : version.toString();
+            if (lists.containsKey(listKey) || !current.equals(args[1])) {
+                return 0L;
+            }
+            LinkedList<String> list = new LinkedList<>();
+            for (int i = 2; i < args.length; i++) {
+                list.add((String) args[i]);
+            }
+            lists.put(listKey, list);
+            return 1L;
+        }
+        if (script == ReflectionTestUtils.getField(BlogCommentsServiceImpl.class, "ADD_SCRIPT")) {
+            LinkedList<String> list = lists.get(listKey);
+            if (list != null) {
+                long headId = JSONUtil.toBean(list.getFirst(), BlogComments.class).getId();
+                long id = Long.parseLong((String) args[3]);
+                if (headId < id) {
+                    list.addFirst((String) args[0]);
+                    while (list.size() > Integer.parseInt((String) args[2])) {
+                        list.removeLast();
+                    }
+                } else if (headId > id) {
+                    lists.remove(listKey);
+                }
+            }
+            versions.merge(versionKey, 1L, Long::sum);
+            return 0L;
+        }
+        if (script == ReflectionTestUtils.getField(BlogCommentsServiceImpl.class, "DELETE_SCRIPT")) {
+            lists.remove(listKey);
+            versions.merge(versionKey, 1L, Long::sum);
+            return 0L;
+        }
+        throw new IllegalArgumentException("unexpected script");
+    }
+}
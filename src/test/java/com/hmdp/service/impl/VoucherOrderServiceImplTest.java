@@ -0,0 +1,211 @@
+package com.hmdp.service.impl;
+
+import com.baomidou.mybatisplus.extension.conditions.update.UpdateChainWrapper;
+import com.hmdp.entity.SeckillVoucher;
+import com.hmdp.entity.VoucherOrder;
+import com.hmdp.mapper.VoucherOrderMapper;
+import com.hmdp.service.ISeckillVoucherService;
+import com.hmdp.service.IVoucherOrderService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.redisson.api.RLock;
+import org.redisson.api.RedissonClient;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.stream.Consumer;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.PendingMessage;
+import org.springframework.data.redis.connection.stream.PendingMessages;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.core.StreamOperations;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 订单批量落库（group commit）的行为测试，不依赖数据库和 Redis
+ */
+class VoucherOrderServiceImplTest {
+
+    private static final String STREAM = "stream.orders:0";
+
+    private VoucherOrderServiceImpl service;
+    private VoucherOrderMapper voucherOrderMapper;
+    private UpdateChainWrapper<SeckillVoucher> stockUpdate;
+    private IVoucherOrderService proxy;
+    private RLock lock;
+    private StreamOperations<String, Object, Object> streamOperations;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        service = spy(new VoucherOrderServiceImpl());
+        // 查询已落库订单
+        voucherOrderMapper = mock(VoucherOrderMapper.class);
+        ReflectionTestUtils.setField(service, "baseMapper", voucherOrderMapper);
+        // 扣减库存：链式调用返回自身，update() 的结果由用例指定
+        stockUpdate = mock(UpdateChainWrapper.class, RETURNS_SELF);
+        ISeckillVoucherService seckillVoucherService = mock(ISeckillVoucherService.class);
+        when(seckillVoucherService.update()).thenReturn(stockUpdate);
+        ReflectionTestUtils.setField(service, "seckillVoucherService", seckillVoucherService);
+        doReturn(true).when(service).saveBatch(anyCollection(), anyInt());
+        // 消费者使用的事务代理、用户锁和 stream
+        proxy = mock(IVoucherOrderService.class);
+        ReflectionTestUtils.setField(service, "proxy", proxy);
+        lock = mock(RLock.class);
+        when(lock.tryLock()).thenReturn(true);
+        RedissonClient redissonClient = mock(RedissonClient.class);
+        when(redissonClient.getLock(anyString())).thenReturn(lock);
+        ReflectionTestUtils.setField(service, "redissonClient", redissonClient);
+        streamOperations = mock(StreamOperations.class);
+        StringRedisTemplate stringRedisTemplate = mock(StringRedisTemplate.class);
+        doReturn(streamOperations).when(stringRedisTemplate).opsForStream();
+        ReflectionTestUtils.setField(service, "stringRedisTemplate", stringRedisTemplate);
+        ReflectionTestUtils.setField(service, "maxDeliveries", 3L);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testBatchDedupesAndDeductsAggregatedStock() {
+        // 用户3已经落库，用户1在批内重复
+        when(voucherOrderMapper.selectList(any())).thenReturn(Collections.singletonList(order(0L, 3L, 10L)));
+        when(stockUpdate.update()).thenReturn(true);
+
+        service.createVoucherOrderBatch(Arrays.asList(
+                order(1L, 1L, 10L), order(2L, 1L, 10L), order(3L, 2L, 10L), order(4L, 3L, 10L)));
+
+        // 同一优惠券只执行一条 stock = stock - n
+        verify(stockUpdate).setSql("stock = stock - 2");
+        verify(stockUpdate).ge("stock", 2L);
+        verify(stockUpdate, times(1)).update();
+        ArgumentCaptor<Collection<VoucherOrder>> saved = ArgumentCaptor.forClass(Collection.class);
+        verify(service).saveBatch(saved.capture(), anyInt());
+        assertEquals(Arrays.asList(1L, 3L),
+                saved.getValue().stream().map(VoucherOrder::getId).collect(Collectors.toList()));
+    }
+
+    @Test
+    void testBatchSkipsWhenAllOrdersExist() {
+        when(voucherOrderMapper.selectList(any())).thenReturn(Collections.singletonList(order(0L, 1L, 10L)));
+
+        service.createVoucherOrderBatch(Collections.singletonList(order(1L, 1L, 10L)));
+
+        verify(stockUpdate, never()).update();
+        verify(service, never()).saveBatch(anyCollection(), anyInt());
+    }
+
+    @Test
+    void testBatchFailsWhenStockInsufficient() {
+        when(voucherOrderMapper.selectList(any())).thenReturn(Collections.emptyList());
+        when(stockUpdate.update()).thenReturn(false);
+
+        assertThrows(IllegalStateException.class, () -> service.createVoucherOrderBatch(
+                Arrays.asList(order(1L, 1L, 10L), order(2L, 2L, 10L))));
+        verify(service, never()).saveBatch(anyCollection(), anyInt());
+    }
+
+    @Test
+    void testBatchSuccessAcknowledgesAllRecords() {
+        MapRecord<String, Object, Object> r1 = record("1-0", 1L, 1L, 10L);
+        MapRecord<String, Object, Object> r2 = record("2-0", 2L, 2L, 10L);
+
+        assertTrue(service.handleVoucherOrderBatch(Arrays.asList(r1, r2)));
+
+        verify(proxy).createVoucherOrderBatch(anyList());
+        verify(streamOperations).acknowledge(STREAM, "g1", r1.getId(), r2.getId());
+        verify(proxy, never()).createVoucherOrder(any(VoucherOrder.class));
+    }
+
+    @Test
+    void testBatchFailureFallsBackToOneByOne() {
+        MapRecord<String, Object, Object> r1 = record("1-0", 1L, 1L, 10L);
+        MapRecord<String, Object, Object> r2 = record("2-0", 2L, 2L, 10L);
+        doThrow(new IllegalStateException("库存不足")).when(proxy).createVoucherOrderBatch(anyList());
+        // 第二条订单单独处理也失败
+        doThrow(new IllegalStateException("db error")).when(proxy)
+                .createVoucherOrder(argThat((VoucherOrder o) -> o != null && o.getUserId() == 2L));
+
+        assertFalse(service.handleVoucherOrderBatch(Arrays.asList(r1, r2)));
+
+        verify(proxy, times(2)).createVoucherOrder(any(VoucherOrder.class));
+        // 只确认成功的那一条，失败的留在 pending-list 中
+        verify(streamOperations).acknowledge(STREAM, "g1", r1.getId());
+        verify(streamOperations, never()).acknowledge(STREAM, "g1", r2.getId());
+    }
+
+    @Test
+    void testLockFailureKeepsRecordPending() {
+        MapRecord<String, Object, Object> r1 = record("1-0", 1L, 1L, 10L);
+        doThrow(new IllegalStateException("库存不足")).when(proxy).createVoucherOrderBatch(anyList());
+        when(lock.tryLock()).thenReturn(false);
+
+        assertFalse(service.handleVoucherOrderBatch(Collections.singletonList(r1)));
+
+        verify(proxy, never()).createVoucherOrder(any(VoucherOrder.class));
+        verifyNoInteractions(streamOperations);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testExhaustedRecordIsDeadLetteredAndAcknowledged() {
+        MapRecord<String, Object, Object> r1 = record("1-0", 1L, 1L, 10L);
+        when(streamOperations.pending(eq(STREAM), eq("g1"), any(Range.class), anyLong()))
+                .thenReturn(pending(r1.getId(), 3L));
+
+        assertTrue(service.deadLetterIfExhausted(STREAM, r1, new IllegalStateException("db error")));
+
+        ArgumentCaptor<MapRecord<String, Object, Object>> deadLetter = ArgumentCaptor.forClass(MapRecord.class);
+        verify(streamOperations).add(deadLetter.capture());
+        assertEquals(STREAM + ":dlq", deadLetter.getValue().getStream());
+        assertEquals("1", deadLetter.getValue().getValue().get("id"));
+        assertEquals("1-0", deadLetter.getValue().getValue().get("recordId"));
+        verify(streamOperations).acknowledge(STREAM, "g1", r1.getId());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testRecordBelowDeliveryLimitStaysPending() {
+        MapRecord<String, Object, Object> r1 = record("1-0", 1L, 1L, 10L);
+        when(streamOperations.pending(eq(STREAM), eq("g1"), any(Range.class), anyLong()))
+                .thenReturn(pending(r1.getId(), 2L));
+
+        assertFalse(service.deadLetterIfExhausted(STREAM, r1, new IllegalStateException("db error")));
+
+        // 只查询了投递次数，没有写死信也没有确认
+        verify(streamOperations).pending(eq(STREAM), eq("g1"), any(Range.class), anyLong());
+        verifyNoMoreInteractions(streamOperations);
+    }
+
+    private static PendingMessages pending(RecordId id, long deliveries) {
+        return new PendingMessages("g1", Collections.singletonList(
+                new PendingMessage(id, Consumer.from("g1", "c1"), Duration.ofSeconds(1), deliveries)));
+    }
+
+    private static VoucherOrder order(Long id, Long userId, Long voucherId) {
+        VoucherOrder voucherOrder = new VoucherOrder();
+        voucherOrder.setId(id);
+        voucherOrder.setUserId(userId);
+        voucherOrder.setVoucherId(voucherId);
+        return voucherOrder;
+    }
+
+    private static MapRecord<String, Object, Object> record(String recordId, Long id, Long userId, Long voucherId) {
+        Map<Object, Object> value = new HashMap<>();
+        value.put("id", id.toString());
+        value.put("userId", userId.toString());
+        value.put("voucherId", voucherId.toString());
+        return MapRecord.create(STREAM, value).withId(RecordId.of(recordId));
+    }
+}
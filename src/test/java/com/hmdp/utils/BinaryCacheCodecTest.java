@@ -0,0 +1,129 @@
+package com.hmdp.utils;
+
+import com.hmdp.entity.Shop;
+import lombok.Data;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * 二进制缓存格式的往返编解码，以及不支持的类型退回 JSON
+ */
+class BinaryCacheCodecTest {
+
+    private final CacheCodec json = spy(new JsonCacheCodec());
+    private final BinaryCacheCodec codec = new BinaryCacheCodec(json);
+
+    @Test
+    void testRoundTripWithNullsAndNegatives() {
+        Shop shop = new Shop()
+                .setId(-1L)
+                .setName("负数店铺")
+                .setX(-120.149192)
+                .setY(-0.0)
+                .setAvgPrice(Long.MIN_VALUE)
+                .setSold(Integer.MIN_VALUE)
+                .setComments(-1)
+                .setScore(0)
+                .setCreateTime(LocalDateTime.of(1960, 1, 1, 0, 0, 0, 123456789));
+        LocalDateTime expireTime = LocalDateTime.of(2030, 1, 1, 12, 0);
+        RedisData redisData = new RedisData();
+        redisData.setData(shop);
+        redisData.setExpireTime(expireTime);
+
+        byte[] bytes = codec.encode(redisData);
+        assertTrue(codec.accepts(bytes));
+        RedisData decoded = codec.decode(bytes, Shop.class, false);
+
+        assertEquals(expireTime, decoded.getExpireTime());
+        Shop result = (Shop) decoded.getData();
+        assertEquals(shop, result);
+        // null 字段解码后仍是 null，不会变成默认值
+        assertNull(result.getImages());
+        assertNull(result.getTypeId());
+        assertNull(result.getUpdateTime());
+        verifyNoInteractions(json);
+    }
+
+    @Test
+    void testListRoundTripWithoutExpireTime() {
+        List<Shop> shops = Arrays.asList(new Shop().setId(1L).setName("a"), new Shop().setId(2L).setScore(-5));
+        RedisData redisData = new RedisData();
+        redisData.setData(shops);
+
+        RedisData decoded = codec.decode(codec.encode(redisData), Shop.class, true);
+
+        assertNull(decoded.getExpireTime());
+        assertEquals(shops, decoded.getData());
+    }
+
+    @Test
+    void testEmptyList() {
+        RedisData redisData = new RedisData();
+        redisData.setData(Collections.emptyList());
+
+        RedisData decoded = codec.decode(codec.encode(redisData), Shop.class, true);
+
+        assertEquals(Collections.emptyList(), decoded.getData());
+    }
+
+    @Test
+    void testListFlagMismatchIsMiss() {
+        RedisData redisData = new RedisData();
+        redisData.setData(new Shop().setId(1L));
+
+        assertNull(codec.decode(codec.encode(redisData), Shop.class, true));
+    }
+
+    @Test
+    void testUnsupportedTypeFallsBackToJsonAndIsCached() {
+        Tagged tagged = new Tagged();
+        tagged.setId(3L);
+        tagged.getTags().put("k", "v");
+        RedisData redisData = new RedisData();
+        redisData.setData(tagged);
+
+        byte[] first = codec.encode(redisData);
+        byte[] second = codec.encode(redisData);
+
+        // 两次都交给 JSON 编码，读取时按头部识别成 JSON
+        assertFalse(codec.accepts(first));
+        assertArrayEquals(first, second);
+        verify(json, times(2)).encode(redisData);
+        assertEquals(Long.valueOf(3L), ((Tagged) json.decode(first, Tagged.class, false).getData()).getId());
+        // 失败结果缓存在 schema 表中，不会每次重新反射
+        Map<?, ?> schemas = (Map<?, ?>) ReflectionTestUtils.getField(codec, "schemas");
+        assertTrue(schemas.containsKey(Tagged.class));
+    }
+
+    @Test
+    void testNestedUnsupportedTypeFallsBackToJson() {
+        Wrapper wrapper = new Wrapper();
+        wrapper.setTagged(new Tagged());
+        RedisData redisData = new RedisData();
+        redisData.setData(wrapper);
+
+        assertFalse(codec.accepts(codec.encode(redisData)));
+        verify(json).encode(redisData);
+    }
+
+    @Data
+    public static class Tagged {
+        private Long id;
+        private Map<String, String> tags = new HashMap<>();
+    }
+
+    @Data
+    public static class Wrapper {
+        private Tagged tagged;
+    }
+}
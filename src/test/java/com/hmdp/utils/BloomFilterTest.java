@@ -0,0 +1,89 @@
+package com.hmdp.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 布隆过滤器不能漏判已经加入的元素，误判率接近配置值
+ */
+class BloomFilterTest {
+
+    @Test
+    void testNoFalseNegatives() {
+        BloomFilter filter = new BloomFilter(100_000, 0.01);
+        for (long id = 1; id <= 100_000; id++) {
+            filter.put(id);
+        }
+        // 负数和很大的 id 也要正确处理 floorMod
+        filter.put(-1L);
+        filter.put(Long.MIN_VALUE);
+        filter.put(Long.MAX_VALUE);
+
+        for (long id = 1; id <= 100_000; id++) {
+            assertTrue(filter.mightContain(id), "漏判: " + id);
+        }
+        assertTrue(filter.mightContain(-1L));
+        assertTrue(filter.mightContain(Long.MIN_VALUE));
+        assertTrue(filter.mightContain(Long.MAX_VALUE));
+    }
+
+    @Test
+    void testFalsePositiveRateNearConfigured() {
+        BloomFilter filter = new BloomFilter(100_000, 0.01);
+        for (long id = 1; id <= 100_000; id++) {
+            filter.put(id);
+        }
+        int falsePositives = 0;
+        int trials = 100_000;
+        for (long id = 1_000_001; id <= 1_000_000 + trials; id++) {
+            if (filter.mightContain(id)) {
+                falsePositives++;
+            }
+        }
+        double rate = (double) falsePositives / trials;
+        assertTrue(rate < 0.02, "误判率过高: " + rate);
+        assertEquals(0.01, filter.expectedFpp(), 0.005);
+    }
+
+    @Test
+    void testConcurrentPutsAreNotLost() throws Exception {
+        BloomFilter filter = new BloomFilter(200_000, 0.01);
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                long start = t;
+                // 交错的 id 使多个线程同时修改同一个 long 槽位
+                futures.add(pool.submit(() -> {
+                    for (long id = start; id < 200_000; id += 4) {
+                        filter.put(id);
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            pool.shutdown();
+        }
+        for (long id = 0; id < 200_000; id++) {
+            assertTrue(filter.mightContain(id), "漏判: " + id);
+        }
+    }
+
+    @Test
+    void testEmptyFilter() {
+        BloomFilter filter = new BloomFilter(0, 0.01);
+
+        assertFalse(filter.mightContain(42L));
+        filter.put(42L);
+        assertTrue(filter.mightContain(42L));
+    }
+}
@@ -0,0 +1,94 @@
+package com.hmdp.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 多个 feed 来源的归并顺序、去重，以及 (max, offset) 滚动分页
+ */
+class FeedMergerTest {
+
+    private static FeedMerger.Entry entry(long id, long score) {
+        return new FeedMerger.Entry(String.valueOf(id), score);
+    }
+
+    @Test
+    void testMergeByScoreThenMemberDescending() {
+        List<FeedMerger.Entry> inbox = Arrays.asList(entry(5, 500), entry(3, 300), entry(1, 100));
+        List<FeedMerger.Entry> outbox = Arrays.asList(entry(6, 400), entry(4, 300), entry(2, 200));
+
+        FeedMerger.Page page = FeedMerger.merge(Arrays.asList(inbox, outbox), Long.MAX_VALUE, 0, 10);
+
+        // score 相同时和 ZREVRANGEBYSCORE 一样按 member 倒序
+        assertEquals(Arrays.asList(5L, 6L, 4L, 3L, 2L, 1L), page.getIds());
+        assertEquals(100, page.getMinTime());
+        assertEquals(1, page.getOffset());
+    }
+
+    @Test
+    void testDuplicatesAcrossSourcesReturnedOnce() {
+        // 改回推模式期间，同一篇笔记同时在收件箱和发件箱中
+        List<FeedMerger.Entry> inbox = Arrays.asList(entry(3, 300), entry(2, 200), entry(1, 100));
+        List<FeedMerger.Entry> outbox = Arrays.asList(entry(3, 300), entry(2, 200));
+        List<FeedMerger.Entry> other = Collections.singletonList(entry(2, 200));
+
+        FeedMerger.Page page = FeedMerger.merge(Arrays.asList(inbox, outbox, other), Long.MAX_VALUE, 0, 10);
+
+        assertEquals(Arrays.asList(3L, 2L, 1L), page.getIds());
+    }
+
+    @Test
+    void testScrollWithSameTimestampAcrossPages() {
+        // 5 篇笔记的时间戳相同，分布在两个来源中，每页 2 条
+        List<FeedMerger.Entry> inbox = Arrays.asList(entry(9, 100), entry(7, 100), entry(5, 100), entry(1, 50));
+        List<FeedMerger.Entry> outbox = Arrays.asList(entry(8, 100), entry(7, 100), entry(6, 100));
+        List<List<FeedMerger.Entry>> sources = Arrays.asList(inbox, outbox);
+
+        List<Long> all = new ArrayList<>();
+        long max = Long.MAX_VALUE;
+        int offset = 0;
+        for (int i = 0; i < 10; i++) {
+            FeedMerger.Page page = FeedMerger.merge(filter(sources, max), max, offset, 2);
+            if (page.getIds().isEmpty()) {
+                break;
+            }
+            all.addAll(page.getIds());
+            max = page.getMinTime();
+            offset = page.getOffset();
+        }
+
+        // 和把所有来源放进一个 ZSET 逐页查询的结果一样，不重复、不遗漏
+        assertEquals(Arrays.asList(9L, 8L, 7L, 6L, 5L, 1L), all);
+    }
+
+    @Test
+    void testEmptySources() {
+        List<FeedMerger.Entry> empty = Collections.emptyList();
+        FeedMerger.Page page = FeedMerger.merge(Arrays.asList(empty, empty), Long.MAX_VALUE, 0, 10);
+
+        assertTrue(page.getIds().isEmpty());
+    }
+
+    /**
+     * 和 ZREVRANGEBYSCORE key max 0 一样，只保留 score 不大于 max 的条目
+     */
+    private static List<List<FeedMerger.Entry>> filter(List<List<FeedMerger.Entry>> sources, long max) {
+        List<List<FeedMerger.Entry>> result = new ArrayList<>();
+        for (List<FeedMerger.Entry> source : sources) {
+            List<FeedMerger.Entry> list = new ArrayList<>();
+            for (FeedMerger.Entry e : source) {
+                if (e.getScore() <= max) {
+                    list.add(e);
+                }
+            }
+            result.add(list);
+        }
+        return result;
+    }
+}
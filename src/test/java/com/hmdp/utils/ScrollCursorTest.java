@@ -0,0 +1,47 @@
+package com.hmdp.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 游标的编解码，以及前端传入格式错误的游标
+ */
+class ScrollCursorTest {
+
+    @Test
+    void testRoundTrip() {
+        ScrollCursor cursor = ScrollCursor.decode(new ScrollCursor(-1234567890123L, Long.MAX_VALUE).encode());
+
+        assertEquals(-1234567890123L, cursor.getSortKey());
+        assertEquals(Long.MAX_VALUE, cursor.getId());
+    }
+
+    @Test
+    void testEncodedCursorIsUrlSafe() {
+        String encoded = new ScrollCursor(Long.MIN_VALUE, Long.MAX_VALUE).encode();
+
+        assertTrue(encoded.matches("[A-Za-z0-9_-]+"), encoded);
+    }
+
+    @Test
+    void testEmptyCursorIsFirstPage() {
+        assertNull(ScrollCursor.decode(null));
+        assertNull(ScrollCursor.decode(""));
+    }
+
+    @Test
+    void testMalformedCursor() {
+        assertThrows(ScrollCursor.InvalidCursorException.class, () -> ScrollCursor.decode("not base64!"));
+        assertThrows(ScrollCursor.InvalidCursorException.class, () -> ScrollCursor.decode(encode("12")));
+        assertThrows(ScrollCursor.InvalidCursorException.class, () -> ScrollCursor.decode(encode("a,1")));
+        assertThrows(ScrollCursor.InvalidCursorException.class, () -> ScrollCursor.decode(encode("1,")));
+    }
+
+    private static String encode(String s) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(s.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,106 @@
+package com.hmdp.utils;
+
+import com.hmdp.entity.Shop;
+import com.hmdp.mapper.ShopMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * 名称索引的 n-gram 查询、分页，以及改名、删除后的索引维护
+ */
+class ShopNameIndexTest {
+
+    private ShopMapper shopMapper;
+    private ShopNameIndex index;
+
+    @BeforeEach
+    void setUp() {
+        shopMapper = mock(ShopMapper.class);
+        index = new ShopNameIndex(shopMapper);
+    }
+
+    private void build(Shop... shops) {
+        when(shopMapper.selectList(any())).thenReturn(Arrays.asList(shops));
+        ReflectionTestUtils.invokeMethod(index, "build");
+    }
+
+    @Test
+    void testSearchMatchesContiguousKeyword() {
+        build(new Shop().setId(1L).setName("103茶餐厅"),
+                new Shop().setId(2L).setName("茶餐厅·北店"),
+                new Shop().setId(3L).setName("餐厅茶"),
+                new Shop().setId(4L).setName("Starbucks Coffee"));
+
+        assertTrue(index.isReady());
+        assertEquals(Arrays.asList(1L, 2L), index.search("茶餐厅", 0, 10));
+        // 单个字使用 1-gram
+        assertEquals(Arrays.asList(1L, 2L, 3L), index.search("茶", 0, 10));
+        // 不区分大小写，分隔符不参与匹配
+        assertEquals(Collections.singletonList(4L), index.search("coffee", 0, 10));
+        assertEquals(Collections.emptyList(), index.search("咖啡", 0, 10));
+    }
+
+    @Test
+    void testOffsetAndCursorPaging() {
+        List<Shop> shops = new ArrayList<>();
+        for (long id = 1; id <= 25; id++) {
+            shops.add(new Shop().setId(id).setName("火锅" + id));
+        }
+        build(shops.toArray(new Shop[0]));
+
+        assertEquals(Arrays.asList(1L, 2L, 3L, 4L, 5L, 6L, 7L, 8L, 9L, 10L), index.search("火锅", 0, 10));
+        assertEquals(Arrays.asList(11L, 12L, 13L, 14L, 15L, 16L, 17L, 18L, 19L, 20L), index.search("火锅", 10, 10));
+        assertEquals(Arrays.asList(21L, 22L, 23L, 24L, 25L), index.search("火锅", 20, 10));
+        // 跳页、回到前面的页与从头查询结果一致
+        assertEquals(Arrays.asList(16L, 17L, 18L), index.search("火锅", 15, 3));
+        assertEquals(Arrays.asList(6L, 7L), index.search("火锅", 5, 2));
+        assertEquals(Collections.emptyList(), index.search("火锅", 30, 10));
+
+        assertEquals(Arrays.asList(21L, 22L), index.searchAfter("火锅", 20, 2));
+    }
+
+    @Test
+    void testRenameDropsOldGrams() {
+        build(new Shop().setId(1L).setName("老王火锅"), new Shop().setId(2L).setName("火锅城"));
+        assertEquals(Arrays.asList(1L, 2L), index.search("火锅", 0, 10));
+
+        index.put(new Shop().setId(1L).setName("老王烧烤"));
+
+        assertEquals(Collections.singletonList(2L), index.search("火锅", 0, 10));
+        assertEquals(Collections.singletonList(1L), index.search("烧烤", 0, 10));
+        assertEquals(Collections.singletonList(1L), index.search("老王", 0, 10));
+    }
+
+    @Test
+    void testRemove() {
+        build(new Shop().setId(1L).setName("火锅一号"), new Shop().setId(2L).setName("火锅二号"));
+        // 先缓存一个分页检查点，删除后不能再使用
+        assertEquals(Collections.singletonList(1L), index.search("火锅", 0, 1));
+
+        index.remove(1L);
+
+        assertEquals(Collections.singletonList(2L), index.search("火锅", 0, 10));
+        assertEquals(Collections.emptyList(), index.search("一号", 0, 10));
+        assertEquals(Collections.emptyList(), index.search("火锅", 1, 10));
+    }
+
+    @Test
+    void testChangesBeforeBuildAreReplayed() {
+        index.put(new Shop().setId(3L).setName("新开的火锅"));
+        index.remove(1L);
+
+        build(new Shop().setId(1L).setName("火锅一号"), new Shop().setId(2L).setName("火锅二号"));
+
+        assertEquals(Arrays.asList(2L, 3L), index.search("火锅", 0, 10));
+    }
+}
@@ -0,0 +1,79 @@
+package com.hmdp.utils;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 雪花 id 在序列号用完、时钟回拨、租约期限下的行为，使用可控的时钟
+ */
+class SnowflakeIdGeneratorTest {
+
+    private static final long NOW = 1700000000000L;
+
+    private final AtomicLong clock = new AtomicLong(NOW);
+    private final SnowflakeIdGenerator generator = new SnowflakeIdGenerator(7, clock::get);
+
+    @Test
+    void testSequenceOverflowBorrowsNextMillisecond() {
+        Set<Long> ids = new HashSet<>();
+        long last = 0;
+        // 同一毫秒内 4096 个序列号用完后，再生成一个
+        for (int i = 0; i <= 4096; i++) {
+            long id = generator.nextId();
+            assertTrue(id > last, "id 必须递增");
+            assertTrue(ids.add(id), "id 不能重复");
+            last = id;
+        }
+        assertEquals(NOW + 1, generator.getLastIssuedMillis());
+        // 真实时钟追上借用的毫秒后，继续递增
+        clock.set(NOW + 1);
+        assertTrue(generator.nextId() > last);
+        assertEquals(NOW + 1, generator.getLastIssuedMillis());
+    }
+
+    @Test
+    void testClockRollbackKeepsIdsIncreasing() {
+        long before = generator.nextId();
+        clock.set(NOW - 1000);
+        long after = generator.nextId();
+
+        assertTrue(after > before);
+        // 沿用回拨前的时间戳，只递增序列号
+        assertEquals(NOW, generator.getLastIssuedMillis());
+        assertEquals(before + 1, after);
+    }
+
+    @Test
+    void testBorrowingBeyondLeaseIsRefused() {
+        for (int i = 0; i < 4096; i++) {
+            generator.nextId(NOW + 1);
+        }
+        // 再生成需要借用 NOW + 1，超过了租约期限
+        assertThrows(IllegalStateException.class, () -> generator.nextId(NOW + 1));
+        assertEquals(NOW, generator.getLastIssuedMillis());
+        // 拒绝时不消耗序列号，期限放宽后从借用的毫秒继续
+        long id = generator.nextId(NOW + 2);
+        assertEquals(NOW + 1, generator.getLastIssuedMillis());
+        assertEquals(0, id & 0xFFF);
+    }
+
+    @Test
+    void testAwaitIssuedTimeReturnsOnceClockPassesLastTimestamp() throws InterruptedException {
+        generator.nextId();
+        assertFalse(generator.awaitIssuedTime(0));
+        clock.set(NOW + 1);
+        assertTrue(generator.awaitIssuedTime(0));
+    }
+
+    @Test
+    void testWorkerIdIsEncoded() {
+        long id = generator.nextId();
+        assertEquals(7, (id >> 12) & 0x3FF);
+        assertEquals(1L << 62, id & (1L << 62));
+    }
+}